@@ -0,0 +1,91 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.model.FxDeal;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic inputs shared by the benchmarks.
+ */
+public final class BenchmarkData {
+
+    // the formats FileUtils tries, in its order; INVALID falls through all of them
+    public enum TimestampFormat {
+        ISO("yyyy-MM-dd'T'HH:mm:ss"),
+        SPACE("yyyy-MM-dd HH:mm:ss"),
+        SLASH("yyyy/MM/dd HH:mm:ss"),
+        INVALID("dd.MM.yyyy HH:mm");
+
+        private final DateTimeFormatter formatter;
+
+        TimestampFormat(String pattern) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern);
+        }
+    }
+
+    private static final String[][] PAIRS = {
+            {"USD", "EUR"}, {"GBP", "USD"}, {"EUR", "JPY"}, {"USD", "CHF"}, {"AUD", "CAD"}
+    };
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 15, 10, 30);
+
+    private BenchmarkData() {
+    }
+
+    static byte[] csv(int rows, TimestampFormat format) {
+        StringBuilder csv = new StringBuilder(rows * 64);
+        csv.append("dealUniqueId,fromCurrency,toCurrency,dealTimestamp,dealAmount,exchangerate\n");
+        for (int i = 0; i < rows; i++) {
+            String[] pair = PAIRS[i % PAIRS.length];
+            csv.append("DEAL-").append(i).append(',')
+                    .append(pair[0]).append(',')
+                    .append(pair[1]).append(',')
+                    .append(format.formatter.format(START.plusMinutes(i))).append(',')
+                    .append(1000 + i).append(".25,")
+                    .append(0.8 + (i % 100) / 1000.0).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static FxDealDTO deal(String dealId, int i) {
+        String[] pair = PAIRS[i % PAIRS.length];
+        return FxDealDTO.builder()
+                .dealId(dealId)
+                .currencyFrom(pair[0])
+                .currencyTo(pair[1])
+                .dealTimestamp(START.plusMinutes(i))
+                .dealAmount(BigDecimal.valueOf(100_025 + i, 2))
+                .exchangeRate(0.8 + (i % 100) / 1000.0)
+                .build();
+    }
+
+    static List<FxDealDTO> deals(String prefix, int count) {
+        List<FxDealDTO> deals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            deals.add(deal(prefix + i, i));
+        }
+        return deals;
+    }
+
+    static List<FxDeal> entities(int count) {
+        List<FxDeal> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            FxDealDTO deal = deal("DEAL-" + i, i);
+            entities.add(FxDeal.builder()
+                    .id((long) i + 1)
+                    .dealId(deal.getDealId())
+                    .currencyFrom(deal.getCurrencyFrom())
+                    .currencyTo(deal.getCurrencyTo())
+                    .dealTimestamp(deal.getDealTimestamp())
+                    .dealAmount(deal.getDealAmount())
+                    .exchangeRate(deal.getExchangeRate())
+                    .build());
+        }
+        return entities;
+    }
+}
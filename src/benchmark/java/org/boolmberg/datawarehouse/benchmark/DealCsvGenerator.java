@@ -0,0 +1,160 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import org.boolmberg.datawarehouse.utils.FileUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Writes upload CSVs of any size, streaming, with a configurable share of faulty rows:
+ * <pre>
+ *   --out=target/load/deals.csv --rows=10000000 --prefix=GEN --seed=42
+ *   --duplicate-rate=0.01 --duplicate-prefix=SEED --duplicate-pool=10000
+ *   --repeat-rate=0.01 --malformed-timestamp-rate=0.005 --malformed-amount-rate=0.005
+ *   --invalid-currency-rate=0.005
+ * </pre>
+ * Deal ids are {@code <prefix>-<row>}. Duplicates reuse {@code <duplicate-prefix>-<n>} for
+ * n below the pool size, so they collide with a file generated earlier with that prefix;
+ * repeats reuse an id from earlier in the same file. Each row gets at most one fault.
+ */
+public final class DealCsvGenerator {
+
+    public enum Fault {
+        DUPLICATE, REPEAT, MALFORMED_TIMESTAMP, MALFORMED_AMOUNT, INVALID_CURRENCY
+    }
+
+    public record Spec(long rows, String prefix, long seed,
+                       double duplicateRate, String duplicatePrefix, int duplicatePool,
+                       double repeatRate, double malformedTimestampRate, double malformedAmountRate,
+                       double invalidCurrencyRate) {
+
+        public static Spec clean(String prefix, long rows) {
+            return new Spec(rows, prefix, 42, 0, null, 0, 0, 0, 0, 0);
+        }
+
+        static Spec from(Options options) {
+            return new Spec(
+                    options.getLong("rows", 1_000_000),
+                    options.get("prefix", "GEN"),
+                    options.getLong("seed", 42),
+                    options.getDouble("duplicate-rate", 0),
+                    options.get("duplicate-prefix", "SEED"),
+                    options.getInt("duplicate-pool", 10_000),
+                    options.getDouble("repeat-rate", 0),
+                    options.getDouble("malformed-timestamp-rate", 0),
+                    options.getDouble("malformed-amount-rate", 0),
+                    options.getDouble("invalid-currency-rate", 0));
+        }
+    }
+
+    private static final String[] CURRENCIES = {"USD", "EUR", "GBP", "JPY", "CHF", "AUD", "CAD", "SEK", "NOK", "JOD"};
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private DealCsvGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        Path out = Path.of(options.get("out", "target/load/deals.csv"));
+        Spec spec = Spec.from(options);
+
+        long started = System.nanoTime();
+        Map<Fault, Long> faults = write(out, spec);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        System.out.printf("Wrote %,d rows to %s (%,d bytes) in %,d ms%n", spec.rows(), out, Files.size(out), millis);
+        faults.forEach((fault, count) -> System.out.printf("  %-20s %,d%n", fault, count));
+    }
+
+    // returns how many rows got each fault
+    public static Map<Fault, Long> write(Path out, Spec spec) throws IOException {
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Map<Fault, Long> faults = new EnumMap<>(Fault.class);
+        for (Fault fault : Fault.values()) {
+            faults.put(fault, 0L);
+        }
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write(FileUtils.CSV_HEADER);
+            writer.write('\n');
+            for (long row = 0; row < spec.rows(); row++) {
+                Fault fault = pickFault(random, spec, row);
+                if (fault != null) {
+                    faults.merge(fault, 1L, Long::sum);
+                }
+                writeRow(writer, random, spec, row, fault);
+            }
+        }
+        return faults;
+    }
+
+    private static Fault pickFault(SplittableRandom random, Spec spec, long row) {
+        double r = random.nextDouble();
+        if ((r -= spec.duplicateRate()) < 0 && spec.duplicatePool() > 0) {
+            return Fault.DUPLICATE;
+        }
+        if ((r -= spec.repeatRate()) < 0 && row > 0) {
+            return Fault.REPEAT;
+        }
+        if ((r -= spec.malformedTimestampRate()) < 0) {
+            return Fault.MALFORMED_TIMESTAMP;
+        }
+        if ((r -= spec.malformedAmountRate()) < 0) {
+            return Fault.MALFORMED_AMOUNT;
+        }
+        if (r - spec.invalidCurrencyRate() < 0) {
+            return Fault.INVALID_CURRENCY;
+        }
+        return null;
+    }
+
+    private static void writeRow(Writer writer, SplittableRandom random, Spec spec, long row, Fault fault)
+            throws IOException {
+        if (fault == Fault.DUPLICATE) {
+            writer.write(spec.duplicatePrefix() + "-" + random.nextInt(spec.duplicatePool()));
+        } else if (fault == Fault.REPEAT) {
+            writer.write(spec.prefix() + "-" + random.nextLong(row));
+        } else {
+            writer.write(spec.prefix() + "-" + row);
+        }
+        writer.write(',');
+
+        int from = random.nextInt(CURRENCIES.length);
+        int to = (from + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+        writer.write(CURRENCIES[from]);
+        writer.write(',');
+        writer.write(fault == Fault.INVALID_CURRENCY ? "QQQ" : CURRENCIES[to]);
+        writer.write(',');
+
+        if (fault == Fault.MALFORMED_TIMESTAMP) {
+            writer.write("2024-13-45 25:61");
+        } else {
+            TIMESTAMP.formatTo(START.plusSeconds(row % 50_000_000), writer);
+        }
+        writer.write(',');
+
+        if (fault == Fault.MALFORMED_AMOUNT) {
+            writer.write("1O0.25");
+        } else {
+            writer.write(Long.toString(1 + random.nextLong(10_000_000)));
+            writer.write('.');
+            int cents = random.nextInt(100);
+            writer.write(cents < 10 ? "0" + cents : Integer.toString(cents));
+        }
+        writer.write(',');
+        writer.write(BigDecimal.valueOf(50_000 + random.nextInt(100_000), 5).toPlainString());
+        writer.write('\n');
+    }
+}
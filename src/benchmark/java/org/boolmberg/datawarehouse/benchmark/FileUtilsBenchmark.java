@@ -0,0 +1,44 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV parsing per row, for each timestamp format FileUtils accepts. Valid formats are read
+ * from bytes at the same cost; INVALID falls back to every DateTimeFormatter in turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileUtilsBenchmark {
+
+    private static final int ROWS = 1_000;
+
+    @Param({"ISO", "SPACE", "SLASH", "INVALID"})
+    public BenchmarkData.TimestampFormat format;
+
+    private byte[] csv;
+
+    @Setup
+    public void setUp() {
+        csv = BenchmarkData.csv(ROWS, format);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int streamCsv(Blackhole blackhole) {
+        return FileUtils.streamCsv(new ByteArrayInputStream(csv), blackhole::consume);
+    }
+}
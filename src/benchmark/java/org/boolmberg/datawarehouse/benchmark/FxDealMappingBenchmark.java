@@ -0,0 +1,54 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.DealCursor;
+import org.boolmberg.datawarehouse.dto.DealPage;
+import org.boolmberg.datawarehouse.model.FxDeal;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping of FxDealApp, measured per deal through a full page of GET /fx-deals
+ * with the database replaced by a fixed list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FxDealMappingBenchmark {
+
+    private static final int PAGE_SIZE = 1_000;
+
+    private FxDealApp fxDealApp;
+
+    @Setup
+    public void setUp() {
+        List<FxDeal> page = BenchmarkData.entities(PAGE_SIZE + 1);
+        FxDealService fxDealService = new FxDealService(null, null, null, null, null, null) {
+            @Override
+            public List<FxDeal> findDeals(String currencyFrom, String currencyTo, LocalDateTime from,
+                                          LocalDateTime to, DealCursor after, int limit) {
+                return page;
+            }
+        };
+        fxDealApp = new FxDealApp(fxDealService, null, null, null, new ImportProperties(), null, null, null, null, null,
+                null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public DealPage mapPage() {
+        return fxDealApp.findDeals(null, null, null, null, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,65 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.exception.ValidationException;
+import org.boolmberg.datawarehouse.validator.FxDealValidator;
+import org.boolmberg.datawarehouse.validator.ValidationError;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throwing single-deal validate() against the check() fast path used by chunked imports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FxDealValidatorBenchmark {
+
+    private final FxDealValidator validator = new FxDealValidator();
+    private FxDealDTO valid;
+    private FxDealDTO unknownCurrency;
+    private LocalDateTime maxDealTimestamp;
+
+    @Setup
+    public void setUp() {
+        valid = BenchmarkData.deal("DEAL-1", 0);
+        unknownCurrency = BenchmarkData.deal("DEAL-2", 0);
+        unknownCurrency.setCurrencyTo("XYZ");
+        maxDealTimestamp = validator.maxDealTimestamp();
+    }
+
+    @Benchmark
+    public FxDealDTO validateValid() {
+        validator.validate(valid);
+        return valid;
+    }
+
+    @Benchmark
+    public Object validateInvalid() {
+        try {
+            validator.validate(unknownCurrency);
+            return null;
+        } catch (ValidationException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public ValidationError checkValid() {
+        return validator.check(valid, maxDealTimestamp);
+    }
+
+    @Benchmark
+    public String checkInvalid() {
+        ValidationError error = validator.check(unknownCurrency, maxDealTimestamp);
+        return error.message(unknownCurrency);
+    }
+}
@@ -0,0 +1,72 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import org.boolmberg.datawarehouse.BloombergDatawarehouseApplication;
+import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.config.ImportMode;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * importDeals end to end (validation, dedup, inserts, error journal) against the in-memory H2
+ * of the test profile. Every invocation imports fresh deal ids, so each row is really written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImportDealsBenchmark {
+
+    private static final int BATCH = 500;
+
+    @Param({"ROW", "CHUNKED"})
+    public ImportMode mode;
+
+    private ConfigurableApplicationContext context;
+    private FxDealApp fxDealApp;
+    private List<FxDealDTO> batch;
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(BloombergDatawarehouseApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                // arguments rather than default properties, so they win over the test profile
+                .run("--fx-deals.import.mode=" + mode,
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN");
+        fxDealApp = context.getBean(FxDealApp.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void nextBatch() {
+        batch = BenchmarkData.deals(mode + "-" + invocation++ + "-", BATCH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public ImportSummary importDeals() {
+        return fxDealApp.importDeals(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+}
@@ -0,0 +1,330 @@
+package org.boolmberg.datawarehouse.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.boolmberg.datawarehouse.BloombergDatawarehouseApplication;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Drives concurrent {@code POST /fx-deals/upload} requests with generated files and reports
+ * rows/sec, request latency percentiles and peak heap. Without {@code --url} the application
+ * is started in this JVM (H2 test profile, or {@code --profile=default} for a local Postgres).
+ * <pre>
+ *   --url=http://localhost:8080 --profile=test --mode=CHUNKED
+ *   --concurrency=4 --requests=16 --warmup-requests=2 --rows=50000
+ *   --duplicate-rate=0.01 --seed-rows=10000 --repeat-rate=0.005
+ *   --malformed-timestamp-rate=0.001 --malformed-amount-rate=0.001 --invalid-currency-rate=0.001
+ *   --min-rows-per-sec=20000 --max-p99-ms=5000 --max-heap-mb=1024 --report=target/load-test.json
+ * </pre>
+ * Each {@code --min/--max} option is a gate: when one is missed, or a request fails, the
+ * process exits with status 1.
+ */
+public final class IngestLoadTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private static final long HEAP_SAMPLE_MILLIS = 50;
+
+    private final Options options;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final Path workDir;
+    private ConfigurableApplicationContext context;
+    private URI baseUrl;
+
+    private IngestLoadTest(Options options) throws IOException {
+        this.options = options;
+        this.workDir = Files.createTempDirectory("fx-load-");
+    }
+
+    public static void main(String[] args) throws Exception {
+        IngestLoadTest loadTest = new IngestLoadTest(Options.parse(args));
+        int status;
+        try {
+            status = loadTest.run();
+        } finally {
+            loadTest.close();
+        }
+        System.exit(status);
+    }
+
+    private int run() throws Exception {
+        startApplication();
+        int concurrency = options.getInt("concurrency", 4);
+        int requests = options.getInt("requests", 16);
+        int warmupRequests = options.getInt("warmup-requests", 2);
+        long rowsPerRequest = options.getLong("rows", 50_000);
+        int seedRows = options.getInt("seed-rows", 10_000);
+
+        // prefixes are unique per run, so a persistent database only sees duplicates on purpose
+        String run = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String seedPrefix = "SEED-" + run;
+        if (seedRows > 0) {
+            Path seed = workDir.resolve("seed.csv");
+            DealCsvGenerator.write(seed, DealCsvGenerator.Spec.clean(seedPrefix, seedRows));
+            upload(seed);
+        }
+        List<Path> warmup = generate(run + "-W", warmupRequests, rowsPerRequest, seedPrefix, seedRows);
+        List<Path> files = generate(run + "-L", requests, rowsPerRequest, seedPrefix, seedRows);
+
+        System.out.printf("Warming up with %d requests...%n", warmupRequests);
+        for (Path file : warmup) {
+            upload(file);
+        }
+
+        System.out.printf("Uploading %d files of %,d rows with concurrency %d...%n", requests, rowsPerRequest, concurrency);
+        HeapSampler heap = new HeapSampler(heapUsage());
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        ImportSummary total = new ImportSummary();
+        AtomicLong failedRequests = new AtomicLong();
+        long started = System.nanoTime();
+        try (ExecutorService clients = Executors.newFixedThreadPool(concurrency)) {
+            List<Future<?>> uploads = new ArrayList<>();
+            for (Path file : files) {
+                uploads.add(clients.submit(() -> {
+                    long requestStarted = System.nanoTime();
+                    try {
+                        ImportSummary summary = upload(file);
+                        latencies.add(System.nanoTime() - requestStarted);
+                        add(total, summary);
+                    } catch (Exception e) {
+                        failedRequests.incrementAndGet();
+                        System.err.println("Upload of " + file.getFileName() + " failed: " + e.getMessage());
+                    }
+                }));
+            }
+            for (Future<?> upload : uploads) {
+                upload.get();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        long peakHeap = heap.stop();
+
+        Map<String, Object> report = report(concurrency, requests, rowsPerRequest, elapsedNanos, latencies,
+                peakHeap, total, failedRequests.get());
+        List<String> violations = gate(report, failedRequests.get());
+        report.put("violations", violations);
+        print(report);
+        Path reportFile = Path.of(options.get("report", "target/load-test.json"));
+        if (reportFile.getParent() != null) {
+            Files.createDirectories(reportFile.getParent());
+        }
+        JSON.writeValue(reportFile.toFile(), report);
+        System.out.println("Report written to " + reportFile);
+        return violations.isEmpty() ? 0 : 1;
+    }
+
+    private void startApplication() {
+        if (options.has("url")) {
+            baseUrl = URI.create(options.get("url", null));
+            return;
+        }
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.servlet.multipart.max-file-size=-1",
+                "--spring.servlet.multipart.max-request-size=-1",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.SQL=WARN"));
+        if (options.has("mode")) {
+            args.add("--fx-deals.import.mode=" + options.get("mode", null));
+        }
+        context = new SpringApplicationBuilder(BloombergDatawarehouseApplication.class)
+                .profiles(options.get("profile", "test"))
+                .run(args.toArray(String[]::new));
+        baseUrl = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    private List<Path> generate(String prefix, int count, long rows, String seedPrefix, int seedRows)
+            throws IOException {
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = workDir.resolve(prefix + "-" + i + ".csv");
+            DealCsvGenerator.write(file, new DealCsvGenerator.Spec(rows, prefix + "-" + i, i,
+                    options.getDouble("duplicate-rate", 0.01), seedPrefix, seedRows,
+                    options.getDouble("repeat-rate", 0.005),
+                    options.getDouble("malformed-timestamp-rate", 0.001),
+                    options.getDouble("malformed-amount-rate", 0.001),
+                    options.getDouble("invalid-currency-rate", 0.001)));
+            files.add(file);
+        }
+        return files;
+    }
+
+    private ImportSummary upload(Path file) throws IOException, InterruptedException {
+        String boundary = "----fx-load-" + UUID.randomUUID();
+        String head = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getFileName() + "\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n";
+        String tail = "\r\n--" + boundary + "--\r\n";
+        HttpRequest request = HttpRequest.newBuilder(baseUrl.resolve("/fx-deals/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofString(head, StandardCharsets.UTF_8),
+                        HttpRequest.BodyPublishers.ofFile(file),
+                        HttpRequest.BodyPublishers.ofString(tail, StandardCharsets.UTF_8)))
+                .build();
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("HTTP " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return JSON.readValue(response.body(), ImportSummary.class);
+    }
+
+    private static synchronized void add(ImportSummary total, ImportSummary summary) {
+        total.setTotalRecords(total.getTotalRecords() + summary.getTotalRecords());
+        total.setSuccessfulImports(total.getSuccessfulImports() + summary.getSuccessfulImports());
+        total.setFailedImports(total.getFailedImports() + summary.getFailedImports());
+        total.setDuplicateImports(total.getDuplicateImports() + summary.getDuplicateImports());
+    }
+
+    // in process the heap is read directly, otherwise from the actuator metrics endpoint
+    private LongSupplier heapUsage() {
+        if (context != null) {
+            return () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+        URI metric = baseUrl.resolve("/actuator/metrics/jvm.memory.used?tag=area:heap");
+        return () -> {
+            try {
+                HttpResponse<String> response = http.send(HttpRequest.newBuilder(metric).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                JsonNode measurements = JSON.readTree(response.body()).path("measurements");
+                return measurements.isEmpty() ? -1 : measurements.get(0).path("value").asLong();
+            } catch (IOException e) {
+                return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        };
+    }
+
+    private static Map<String, Object> report(int concurrency, int requests, long rowsPerRequest, long elapsedNanos,
+                                              List<Long> latencies, long peakHeap, ImportSummary total,
+                                              long failedRequests) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        sorted.sort(null);
+        double seconds = elapsedNanos / 1e9;
+        long rows = (long) requests * rowsPerRequest;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("concurrency", concurrency);
+        report.put("requests", requests);
+        report.put("failedRequests", failedRequests);
+        report.put("rows", rows);
+        report.put("elapsedSeconds", Math.round(seconds * 1000) / 1000.0);
+        report.put("rowsPerSec", Math.round(rows / seconds));
+        report.put("p50Ms", percentileMillis(sorted, 0.50));
+        report.put("p99Ms", percentileMillis(sorted, 0.99));
+        report.put("maxMs", percentileMillis(sorted, 1.0));
+        report.put("peakHeapMb", peakHeap < 0 ? null : peakHeap / (1024 * 1024));
+        report.put("successfulImports", total.getSuccessfulImports());
+        report.put("failedImports", total.getFailedImports());
+        report.put("duplicateImports", total.getDuplicateImports());
+        return report;
+    }
+
+    private static Long percentileMillis(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return null;
+        }
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1_000_000;
+    }
+
+    private List<String> gate(Map<String, Object> report, long failedRequests) {
+        List<String> violations = new ArrayList<>();
+        if (failedRequests > 0) {
+            violations.add(failedRequests + " requests failed");
+        }
+        if (options.has("min-rows-per-sec")) {
+            long min = options.getLong("min-rows-per-sec", 0);
+            long actual = (Long) report.get("rowsPerSec");
+            if (actual < min) {
+                violations.add("rowsPerSec " + actual + " < " + min);
+            }
+        }
+        checkMax(violations, report, "p99Ms", "max-p99-ms");
+        checkMax(violations, report, "peakHeapMb", "max-heap-mb");
+        return violations;
+    }
+
+    private void checkMax(List<String> violations, Map<String, Object> report, String key, String option) {
+        if (!options.has(option)) {
+            return;
+        }
+        long max = options.getLong(option, 0);
+        Object actual = report.get(key);
+        if (actual == null) {
+            violations.add(key + " was not measured");
+        } else if (((Number) actual).longValue() > max) {
+            violations.add(key + " " + actual + " > " + max);
+        }
+    }
+
+    private static void print(Map<String, Object> report) {
+        System.out.println();
+        report.forEach((key, value) -> System.out.printf("  %-18s %s%n", key, value));
+        System.out.println();
+    }
+
+    private void close() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        try (var files = Files.list(workDir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(workDir);
+    }
+
+    private static final class HeapSampler {
+
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final AtomicLong peak = new AtomicLong(-1);
+
+        HeapSampler(LongSupplier heapUsed) {
+            scheduler.scheduleAtFixedRate(() -> peak.accumulateAndGet(heapUsed.getAsLong(), Math::max),
+                    0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        long stop() throws InterruptedException {
+            scheduler.shutdown();
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            return peak.get();
+        }
+    }
+}
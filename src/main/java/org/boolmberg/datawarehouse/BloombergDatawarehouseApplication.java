@@ -2,10 +2,14 @@ package org.boolmberg.datawarehouse;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableAspectJAutoProxy
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 public class BloombergDatawarehouseApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,15 @@
+package org.boolmberg.datawarehouse.api;
+
+import org.boolmberg.datawarehouse.config.AdmissionLane;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// runs the handler in a slot of the lane, see AdmissionInterceptor
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Admission {
+    AdmissionLane value();
+}
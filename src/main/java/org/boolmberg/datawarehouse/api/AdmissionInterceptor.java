@@ -0,0 +1,46 @@
+package org.boolmberg.datawarehouse.api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.boolmberg.datawarehouse.app.AdmissionControl;
+import org.boolmberg.datawarehouse.config.AdmissionLane;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Takes a slot of the handler's {@link Admission} lane before the handler runs and gives it back
+ * once the response is complete. A raw request body is still unread when the call is turned away;
+ * a multipart body has been spooled by then, matching the async upload's parameter reads it.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String LANE = AdmissionInterceptor.class.getName() + ".lane";
+
+    private final AdmissionControl admissionControl;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod method) {
+            Admission admission = method.getMethodAnnotation(Admission.class);
+            if (admission != null) {
+                // throws when the lane stays full, afterCompletion isn't called then
+                admissionControl.enter(admission.value());
+                request.setAttribute(LANE, admission.value());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        if (request.getAttribute(LANE) instanceof AdmissionLane lane) {
+            request.removeAttribute(LANE);
+            admissionControl.leave(lane);
+        }
+    }
+}
@@ -2,10 +2,27 @@ package org.boolmberg.datawarehouse.api;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.boolmberg.datawarehouse.app.DealStatsApp;
 import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.app.FxDealExportApp;
+import org.boolmberg.datawarehouse.app.ImportJobApp;
+import org.boolmberg.datawarehouse.app.ImportProgress;
+import org.boolmberg.datawarehouse.config.AdmissionLane;
+import org.boolmberg.datawarehouse.dto.CacheStatsDTO;
+import org.boolmberg.datawarehouse.dto.DealPage;
+import org.boolmberg.datawarehouse.dto.DealStatsDTO;
+import org.boolmberg.datawarehouse.dto.ExportFormat;
 import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.ImportJobDTO;
 import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.dto.RecentScanDTO;
+import org.boolmberg.datawarehouse.dto.StatsRebuildDTO;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -15,7 +32,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RequiredArgsConstructor
@@ -24,28 +45,129 @@ import java.util.List;
 public class FxDealApi {
 
     private final FxDealApp fxDealApp;
+    private final ImportJobApp importJobApp;
+    private final FxDealExportApp fxDealExportApp;
+    private final DealStatsApp dealStatsApp;
+
+    @GetMapping("/cache/stats")
+    @ResponseStatus(HttpStatus.OK)
+    public CacheStatsDTO getCacheStats() {
+        return fxDealApp.getCacheStats();
+    }
+
+    // count, notional and amount-weighted rate per pair and bucket=1h|1d, from the rollup
+    @GetMapping("/stats")
+    @ResponseStatus(HttpStatus.OK)
+    public List<DealStatsDTO> getDealStats(@RequestParam(required = false) String pair,
+                                           @RequestParam(defaultValue = "1h") String bucket,
+                                           @RequestParam(required = false)
+                                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                           @RequestParam(required = false)
+                                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return dealStatsApp.getStats(pair, bucket, from, to);
+    }
+
+    // recomputes the rollup for the range from fx_deals, e.g. after a backfill
+    @PostMapping("/stats/rebuild")
+    @ResponseStatus(HttpStatus.OK)
+    public StatsRebuildDTO rebuildDealStats(@RequestParam(required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                            @RequestParam(required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return dealStatsApp.rebuild(from, to);
+    }
+
+    // count, notional and amount range per pair of recent deals, from the in-memory store
+    @GetMapping("/recent/scan")
+    @ResponseStatus(HttpStatus.OK)
+    public RecentScanDTO scanRecentDeals(@RequestParam(required = false) String pair,
+                                         @RequestParam(required = false) BigDecimal minAmount,
+                                         @RequestParam(required = false) BigDecimal maxAmount,
+                                         @RequestParam(required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                         @RequestParam(required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return dealStatsApp.scanRecent(pair, minAmount, maxAmount, from, to);
+    }
 
     @GetMapping("/{dealId}")
     @ResponseStatus(HttpStatus.OK)
+    @Admission(AdmissionLane.INTERACTIVE)
     public FxDealDTO getFxDealById(@PathVariable String dealId) {
         return fxDealApp.getFxDealById(dealId);
     }
 
+    // keyset pagination ordered by (dealTimestamp, id); pass nextCursor back as cursor for the next page
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
-    public List<FxDealDTO> getAllFxDeals() {
-        return fxDealApp.findAllDeals();
+    public DealPage getFxDeals(@RequestParam(required = false) String pair,
+                               @RequestParam(required = false)
+                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                               @RequestParam(required = false)
+                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                               @RequestParam(required = false) String cursor,
+                               @RequestParam(required = false) Integer limit) {
+        return fxDealApp.findDeals(pair, from, to, cursor, limit);
+    }
+
+    // full snapshot streamed as it is read, format=csv (upload layout) or ndjson
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFxDeals(@RequestParam(defaultValue = "csv") String format) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("fx-deals." + exportFormat.getExtension())
+                        .build()
+                        .toString())
+                .body(outputStream -> fxDealExportApp.export(exportFormat, outputStream));
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
+    @Admission(AdmissionLane.INTERACTIVE)
     public ImportSummary importDeal(@Valid @RequestBody FxDealDTO dto) {
         return fxDealApp.importDeal(dto);
     }
 
+    // many deals in one request: NDJSON, one deal per line, or a JSON array, parsed as it arrives
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(path = "/bulk", consumes = {"application/x-ndjson", "application/json"})
+    @Admission(AdmissionLane.BULK)
+    public ImportSummary importDeals(InputStream body) {
+        return fxDealApp.importJson(body);
+    }
+
+    // plain CSV, gzip or a zip of CSVs, told apart by their first bytes; a file imported before
+    // gets its earlier summary back unless force=true
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping(path = "/upload", consumes = {"multipart/form-data"})
-    public ImportSummary uploadCSV(@RequestParam("file") MultipartFile file) {
-        return fxDealApp.uploadCsv(file);
+    @Admission(AdmissionLane.BULK)
+    public ImportSummary uploadCSV(@RequestParam("file") MultipartFile file,
+                                   @RequestParam(defaultValue = "false") boolean force) {
+        return fxDealApp.uploadCsv(file, force);
+    }
+
+    // the file as the raw request body, hashed while it is spooled instead of parsed as multipart;
+    // read as it arrives when checkpoints are disabled
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(path = "/upload", consumes = {"text/csv", "application/gzip", "application/zip",
+            "application/octet-stream"})
+    @Admission(AdmissionLane.BULK)
+    public ImportSummary uploadCSVBody(InputStream body, @RequestParam(defaultValue = "false") boolean force) {
+        return fxDealApp.uploadCsv(body, force, new ImportProgress());
+    }
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping(path = "/upload", consumes = {"multipart/form-data"}, params = "async=true")
+    public ImportJobDTO uploadCSVAsync(@RequestParam("file") MultipartFile file,
+                                       @RequestParam(defaultValue = "false") boolean force) {
+        return importJobApp.submitCsv(file, force);
+    }
+
+    @GetMapping("/imports/{jobId}")
+    @ResponseStatus(HttpStatus.OK)
+    public ImportJobDTO getImportJob(@PathVariable String jobId) {
+        return importJobApp.getJob(jobId);
     }
 }
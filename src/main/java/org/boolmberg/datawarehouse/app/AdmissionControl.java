@@ -0,0 +1,134 @@
+package org.boolmberg.datawarehouse.app;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.AdmissionLane;
+import org.boolmberg.datawarehouse.config.AdmissionProperties;
+import org.boolmberg.datawarehouse.exception.CapacityExceededException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps bulk imports from starving interactive calls. Each {@link AdmissionLane} has its own
+ * number of requests allowed to run, and bulk imports share a budget of database connections
+ * that leaves the rest of the pool to everything else.
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    private final Map<AdmissionLane, Lane> lanes = new EnumMap<>(AdmissionLane.class);
+    private final Semaphore bulkConnections;
+    private final AtomicInteger bulkConnectionsWaiting = new AtomicInteger();
+
+    public AdmissionControl(AdmissionProperties properties, MeterRegistry meterRegistry, DataSource dataSource) {
+        lanes.put(AdmissionLane.BULK, new Lane(AdmissionLane.BULK, properties.getBulk(), meterRegistry));
+        lanes.put(AdmissionLane.INTERACTIVE,
+                new Lane(AdmissionLane.INTERACTIVE, properties.getInteractive(), meterRegistry));
+
+        int budget = Math.max(1, properties.getBulkConnections());
+        bulkConnections = new Semaphore(budget, true);
+        if (dataSource instanceof HikariDataSource hikari && budget >= hikari.getMaximumPoolSize()) {
+            log.warn("Bulk imports may take all {} pooled connections, interactive calls will wait for them",
+                    hikari.getMaximumPoolSize());
+        }
+        Gauge.builder("fx.admission.db.connections.active", () -> budget - bulkConnections.availablePermits())
+                .description("Database connections held by bulk imports")
+                .register(meterRegistry);
+        Gauge.builder("fx.admission.db.connections.waiting", bulkConnectionsWaiting, AtomicInteger::get)
+                .description("Bulk import chunks waiting for a database connection")
+                .register(meterRegistry);
+    }
+
+    // throws CapacityExceededException when no slot frees up within the lane's max wait
+    public void enter(AdmissionLane lane) {
+        lanes.get(lane).enter();
+    }
+
+    public void leave(AdmissionLane lane) {
+        lanes.get(lane).permits.release();
+    }
+
+    // blocks, the import was admitted already and the caller holds its place in the file
+    public void acquireBulkConnection() {
+        bulkConnectionsWaiting.incrementAndGet();
+        try {
+            bulkConnections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection", e);
+        } finally {
+            bulkConnectionsWaiting.decrementAndGet();
+        }
+    }
+
+    public void releaseBulkConnection() {
+        bulkConnections.release();
+    }
+
+    public Duration retryAfter(AdmissionLane lane) {
+        return lanes.get(lane).retryAfter;
+    }
+
+    private static final class Lane {
+        private final String name;
+        private final Semaphore permits;
+        private final Duration maxWait;
+        private final Duration retryAfter;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final Counter rejected;
+
+        private Lane(AdmissionLane lane, AdmissionProperties.Lane properties, MeterRegistry meterRegistry) {
+            int maxConcurrent = Math.max(1, properties.getMaxConcurrent());
+            this.name = lane.name().toLowerCase(Locale.ROOT);
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.maxWait = properties.getMaxWait();
+            this.retryAfter = properties.getRetryAfter();
+            Gauge.builder("fx.admission.active", () -> maxConcurrent - permits.availablePermits())
+                    .description("Requests running in the lane")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            Gauge.builder("fx.admission.waiting", waiting, AtomicInteger::get)
+                    .description("Requests waiting for a slot in the lane")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("fx.admission.rejected")
+                    .description("Requests turned away with 429 because the lane was full")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+        }
+
+        private void enter() {
+            boolean admitted;
+            if (maxWait.isZero()) {
+                admitted = permits.tryAcquire();
+            } else {
+                waiting.incrementAndGet();
+                try {
+                    admitted = permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    admitted = false;
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            }
+            if (!admitted) {
+                rejected.increment();
+                throw new CapacityExceededException("Too many " + name + " requests in progress, retry later",
+                        retryAfter);
+            }
+        }
+    }
+}
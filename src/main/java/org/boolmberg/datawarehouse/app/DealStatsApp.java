@@ -0,0 +1,65 @@
+package org.boolmberg.datawarehouse.app;
+
+import lombok.RequiredArgsConstructor;
+import org.boolmberg.datawarehouse.dto.DealStatsDTO;
+import org.boolmberg.datawarehouse.dto.RecentScanDTO;
+import org.boolmberg.datawarehouse.dto.StatsBucket;
+import org.boolmberg.datawarehouse.dto.StatsRebuildDTO;
+import org.boolmberg.datawarehouse.exception.ValidationException;
+import org.boolmberg.datawarehouse.service.DealStatsService;
+import org.boolmberg.datawarehouse.service.RecentDealStore;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Volume dashboards: answered from the hourly rollup or the recent deal store, never from fx_deals.
+ */
+@Service
+@RequiredArgsConstructor
+public class DealStatsApp {
+
+    private final DealStatsService dealStatsService;
+    private final RecentDealStore recentDealStore;
+
+    public List<DealStatsDTO> getStats(String pair, String bucket, LocalDateTime from, LocalDateTime to) {
+        checkPair(pair);
+        checkRange(from, to);
+        return dealStatsService.find(
+                pair == null ? null : pair.substring(0, 3),
+                pair == null ? null : pair.substring(3),
+                StatsBucket.from(bucket), from, to);
+    }
+
+    public StatsRebuildDTO rebuild(LocalDateTime from, LocalDateTime to) {
+        checkRange(from, to);
+        return dealStatsService.rebuild(from, to);
+    }
+
+    public RecentScanDTO scanRecent(String pair, BigDecimal minAmount, BigDecimal maxAmount,
+                                    LocalDateTime from, LocalDateTime to) {
+        if (!recentDealStore.isEnabled()) {
+            throw new ValidationException("The recent deal store is disabled, see fx-deals.recent-store.enabled");
+        }
+        checkPair(pair);
+        checkRange(from, to);
+        if (minAmount != null && maxAmount != null && minAmount.compareTo(maxAmount) > 0) {
+            throw new ValidationException("minAmount must not be greater than maxAmount");
+        }
+        return recentDealStore.scan(pair, minAmount, maxAmount, from, to);
+    }
+
+    private void checkPair(String pair) {
+        if (pair != null && !pair.matches("[A-Z]{6}")) {
+            throw new ValidationException("pair must be two 3-letter ISO codes, e.g. EURUSD");
+        }
+    }
+
+    private void checkRange(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ValidationException("from must be before to");
+        }
+    }
+}
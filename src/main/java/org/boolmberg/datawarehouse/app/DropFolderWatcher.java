@@ -0,0 +1,226 @@
+package org.boolmberg.datawarehouse.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.DropFolderProperties;
+import org.boolmberg.datawarehouse.dto.ImportJobDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.model.ImportJobStatus;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports the files an upstream system writes to a local directory, one file at a time,
+ * straight from disk through {@link FxDealApp#importFile}. Each file is then moved to done/,
+ * or failed/ when the import threw, next to a {@code <file>.summary.json} job report.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DropFolderWatcher {
+
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+    static final String REPORT_SUFFIX = ".summary.json";
+
+    private static final DateTimeFormatter COLLISION_PREFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-");
+
+    private final FxDealApp fxDealApp;
+    private final DropFolderProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private volatile WatchService watchService;
+    private volatile Thread thread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Path directory = properties.getDirectory();
+        try {
+            Files.createDirectories(directory.resolve(DONE));
+            Files.createDirectories(directory.resolve(FAILED));
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        thread = Thread.ofPlatform().name("fx-drop-folder").daemon().start(this::watch);
+        log.info("Watching {} for {} files", directory.toAbsolutePath(), properties.getPattern());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        Thread running = thread;
+        if (running == null) {
+            return;
+        }
+        thread = null;
+        watchService.close();
+        // lets an import in progress finish
+        running.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    private void watch() {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + properties.getPattern());
+        Map<Path, Candidate> candidates = new HashMap<>();
+        // files dropped while we weren't running
+        scan(matcher, candidates);
+        long pollMillis = Math.max(50, properties.getSettleTime().toMillis() / 2);
+        try {
+            while (thread != null) {
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scan(matcher, candidates);
+                        } else if (event.context() instanceof Path name && matcher.matches(name)) {
+                            candidates.putIfAbsent(properties.getDirectory().resolve(name), new Candidate());
+                        }
+                    }
+                    key.reset();
+                }
+                importSettled(candidates);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("Stopped watching {}", properties.getDirectory());
+        }
+    }
+
+    private void scan(PathMatcher matcher, Map<Path, Candidate> candidates) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(properties.getDirectory())) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                    candidates.putIfAbsent(file, new Candidate());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't list {}: {}", properties.getDirectory(), e.getMessage());
+        }
+    }
+
+    private void importSettled(Map<Path, Candidate> candidates) {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Candidate> entry = it.next();
+            Path file = entry.getKey();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // moved away or deleted in the meantime
+                it.remove();
+                continue;
+            }
+            if (entry.getValue().changed(attributes, now)) {
+                continue;
+            }
+            if (now - entry.getValue().since >= properties.getSettleTime().toNanos()) {
+                it.remove();
+                importFile(file);
+            }
+        }
+    }
+
+    void importFile(Path file) {
+        ImportProgress progress = new ImportProgress();
+        LocalDateTime startedAt = LocalDateTime.now();
+        ImportSummary summary = null;
+        String error = null;
+        log.info("Importing dropped file {}", file.getFileName());
+        try {
+            summary = fxDealApp.importFile(file, progress);
+        } catch (Exception e) {
+            log.error("Import of dropped file {} failed", file.getFileName(), e);
+            error = e.getMessage();
+        }
+
+        ImportJobStatus status = error == null ? ImportJobStatus.COMPLETED : ImportJobStatus.FAILED;
+        ImportJobDTO report = ImportJobDTO.builder()
+                .jobId(summary != null ? summary.getImportId() : UUID.randomUUID().toString())
+                .fileName(file.getFileName().toString())
+                .status(status)
+                .rowsRead(progress.getRowsRead())
+                .imported(progress.getImported())
+                .duplicates(progress.getDuplicates())
+                .failed(progress.getFailed())
+                .rowsPerSecond(progress.getRowsPerSecond())
+                .submittedAt(startedAt)
+                .startedAt(startedAt)
+                .finishedAt(LocalDateTime.now())
+                .error(error)
+                .summary(summary)
+                .build();
+        try {
+            Path target = target(file, status == ImportJobStatus.COMPLETED ? DONE : FAILED);
+            objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValue(target.resolveSibling(target.getFileName() + REPORT_SUFFIX).toFile(), report);
+            move(file, target);
+            log.info("Moved dropped file {} to {}", file.getFileName(), target);
+        } catch (IOException e) {
+            // left in place it would be imported again after a restart
+            log.error("Couldn't move dropped file {} out of the way", file, e);
+        }
+    }
+
+    private Path target(Path file, String folder) {
+        Path target = properties.getDirectory().resolve(folder).resolve(file.getFileName());
+        if (Files.exists(target)) {
+            target = target.resolveSibling(COLLISION_PREFIX.format(LocalDateTime.now()) + file.getFileName());
+        }
+        return target;
+    }
+
+    private static void move(Path file, Path target) throws IOException {
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // a file seen in the directory and when its size or modification time last changed
+    private static final class Candidate {
+        private long size = -1;
+        private long modified = -1;
+        private long since;
+
+        boolean changed(BasicFileAttributes attributes, long now) {
+            long currentModified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() == size && currentModified == modified) {
+                return false;
+            }
+            size = attributes.size();
+            modified = currentModified;
+            since = now;
+            return true;
+        }
+    }
+}
@@ -1,30 +1,63 @@
 package org.boolmberg.datawarehouse.app;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.ImportMode;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.CacheStatsDTO;
+import org.boolmberg.datawarehouse.dto.DealCursor;
+import org.boolmberg.datawarehouse.dto.DealPage;
+import org.boolmberg.datawarehouse.dto.FileImport;
 import org.boolmberg.datawarehouse.dto.FxDealDTO;
 import org.boolmberg.datawarehouse.dto.ImportSummary;
-import org.boolmberg.datawarehouse.exception.DuplicateDealException;
+import org.boolmberg.datawarehouse.exception.FxDealNotFoundException;
 import org.boolmberg.datawarehouse.exception.ValidationException;
+import org.boolmberg.datawarehouse.metrics.ImportMetrics;
 import org.boolmberg.datawarehouse.model.FxDeal;
 import org.boolmberg.datawarehouse.model.ImportError;
-import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.boolmberg.datawarehouse.service.DealCache;
 import org.boolmberg.datawarehouse.service.ErrorService;
+import org.boolmberg.datawarehouse.service.FileImportService;
+import org.boolmberg.datawarehouse.service.FxDealCopyService;
 import org.boolmberg.datawarehouse.service.FxDealService;
 import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.boolmberg.datawarehouse.validator.FxDealValidator;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class FxDealApp {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final FxDealService fxDealService;
+    private final FxDealCopyService fxDealCopyService;
     private final ErrorService errorService;
+    private final FxDealValidator validator;
+    private final ImportProperties importProperties;
+    private final ForkJoinPool importValidationPool;
+    private final DealCache dealCache;
+    private final ImportMetrics importMetrics;
+    private final ObjectMapper objectMapper;
+    private final AdmissionControl admissionControl;
+    private final FileImportService fileImportService;
 
 
     public ImportSummary importDeal(FxDealDTO dto) {
@@ -35,87 +68,265 @@ public class FxDealApp {
                 .duplicateImports(0)
                 .build();
         fxDealService.importDeal(dto);
+        dealCache.put(dto);
         importSummary.setSuccessfulImports(1);
         return importSummary;
     }
     public ImportSummary importDeals(List<FxDealDTO> deals) {
-        ImportSummary importSummary = ImportSummary.builder()
-                .totalRecords(deals.size())
-                .successfulImports(0)
-                .failedImports(0)
-                .duplicateImports(0)
-                .build();
+        ImportSession session = newSession(new ImportProgress());
+        return run(session, () -> deals.forEach(session));
+    }
+
+    // Plain, gzip or zip, see FileUtils.Compression. A file imported before gets its stored
+    // summary back unless forced, see FileImportService.
+    public ImportSummary uploadCsv(MultipartFile file, boolean force) {
+        String checksum = null;
+        FileUtils.Compression compression;
+        if (importProperties.getCheckpoints().isEnabled()) {
+            FileUtils.Fingerprint fingerprint = FileUtils.fingerprint(file);
+            checksum = fingerprint.checksum();
+            compression = fingerprint.compression();
+        } else {
+            compression = FileUtils.detectCompression(file);
+        }
+        String fileName = file.getOriginalFilename();
+        if (compression == FileUtils.Compression.ZIP) {
+            try (InputStream inputStream = file.getInputStream()) {
+                return importZip(inputStream, new ImportProgress(), checksum, fileName, force);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        FileImport fileImport = beginFileImport(checksum, "", fileName, force);
+        if (isDone(fileImport)) {
+            return fileImport.getSummary();
+        }
+        ImportSession session = newSession(new ImportProgress(), fileImport);
+        return run(session, () -> FileUtils.streamFile(file, session));
+    }
 
-        for (int i = 0; i < deals.size(); i++) {
-            FxDealDTO deal = deals.get(i);
-            int rowNumber = i + 1;
+    // A raw request body can only be read once. A tracked one is spooled to disk and hashed on the
+    // way, so it is looked up in file_imports before any of its rows are imported.
+    public ImportSummary uploadCsv(InputStream inputStream, boolean force, ImportProgress progress) {
+        if (!importProperties.getCheckpoints().isEnabled()) {
+            return importStream(inputStream, progress, null, null, false);
+        }
+        Path spool;
+        try {
+            spool = Files.createTempFile("fx-import-", ".csv");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            String checksum = FileUtils.copy(() -> inputStream, spool);
+            return uploadCsv(spool, null, checksum, force, progress);
+        } finally {
             try {
-                fxDealService.importDeal(deal);
-                importSummary.setSuccessfulImports(importSummary.getSuccessfulImports() + 1);
-            } catch (ValidationException e) {
-                log.error(e.getMessage(), e);
-                importSummary.setFailedImports(importSummary.getFailedImports() + 1);
-                errorService.addImportError(rowNumber, deal.getDealId(), e.getMessage(), ImportErrorType.VALIDATION);
-                importSummary.addError(ImportSummary.ImportErrorDto.builder()
-                                .errorMessage(e.getMessage())
-                                .dealId(deal.getDealId())
-                                .errorType(ImportErrorType.VALIDATION.name())
-                                .rowNumber(rowNumber)
-                        .build());
-            } catch (DuplicateDealException e) {
-                log.error(e.getMessage(), e);
-                importSummary.setDuplicateImports(importSummary.getDuplicateImports() + 1);
-                errorService.addImportError(rowNumber, deal.getDealId(), e.getMessage(), ImportErrorType.DUPLICATE);
-                importSummary.addError(ImportSummary.ImportErrorDto.builder()
-                        .errorMessage(e.getMessage())
-                        .dealId(deal.getDealId())
-                        .errorType(ImportErrorType.DUPLICATE.name())
-                        .rowNumber(rowNumber)
-                        .build());
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-                importSummary.setFailedImports(importSummary.getFailedImports() + 1);
-                errorService.addImportError(rowNumber, deal.getDealId(), e.getMessage(), ImportErrorType.UNKNOWN);
-                importSummary.addError(ImportSummary.ImportErrorDto.builder()
-                        .errorMessage(e.getMessage())
-                        .dealId(deal.getDealId())
-                        .errorType(ImportErrorType.UNKNOWN.name())
-                        .rowNumber(rowNumber)
-                        .build());
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("Couldn't delete import file {}: {}", spool, e.getMessage());
+            }
+        }
+    }
+
+    // an upload an async job copied to disk, hashed while it was copied
+    public ImportSummary uploadCsv(Path file, String fileName, String checksum, boolean force,
+                                   ImportProgress progress) {
+        String tracked = importProperties.getCheckpoints().isEnabled() ? checksum : null;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return importStream(inputStream, progress, tracked, fileName, force);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ImportSummary importStream(InputStream inputStream, ImportProgress progress, String checksum,
+                                       String fileName, boolean force) {
+        PushbackInputStream peekable = new PushbackInputStream(inputStream, 4);
+        try {
+            if (FileUtils.detectCompression(peekable) == FileUtils.Compression.ZIP) {
+                return importZip(peekable, progress, checksum, fileName, force);
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        FileImport fileImport = beginFileImport(checksum, "", fileName, force);
+        if (isDone(fileImport)) {
+            return fileImport.getSummary();
+        }
+        ImportSession session = newSession(progress, fileImport);
+        return run(session, () -> FileUtils.streamCsv(peekable, session));
+    }
 
-        return importSummary;
+    // NDJSON or a JSON array, plain or gzip, errors reported by line or array position
+    public ImportSummary importJson(InputStream inputStream) {
+        ImportSession session = newSession(new ImportProgress());
+        return run(session, () -> FileUtils.streamJson(inputStream, objectMapper, session));
     }
 
-    public ImportSummary uploadCsv(MultipartFile file) {
-        List<FxDealDTO> deals = new ArrayList<>();
-        FileUtils.pareFile(file, deals);
-        return importDeals(deals);
+    // Every entry is a separate import with its own importId, inflated while it is read. The
+    // archive is tracked as a whole and every entry on its own, so a re-sent archive that failed
+    // part way skips the entries that completed.
+    private ImportSummary importZip(InputStream inputStream, ImportProgress progress, String checksum,
+                                    String fileName, boolean force) {
+        FileImport archive = beginFileImport(checksum, "", fileName, force);
+        if (isDone(archive)) {
+            return archive.getSummary();
+        }
+        ImportSummary total = ImportSummary.builder()
+                .entries(new ArrayList<>())
+                .build();
+        try {
+            FileUtils.streamZip(inputStream, (name, entry) -> {
+                FileImport fileImport = beginFileImport(checksum, name, name, force);
+                ImportSummary summary;
+                if (isDone(fileImport)) {
+                    summary = fileImport.getSummary();
+                } else {
+                    ImportSession session = newSession(progress, fileImport);
+                    summary = run(session, () -> FileUtils.streamCsv(entry, session));
+                }
+                summary.setFileName(name);
+                total.getEntries().add(summary);
+                total.setTotalRecords(total.getTotalRecords() + summary.getTotalRecords());
+                total.setSuccessfulImports(total.getSuccessfulImports() + summary.getSuccessfulImports());
+                total.setFailedImports(total.getFailedImports() + summary.getFailedImports());
+                total.setDuplicateImports(total.getDuplicateImports() + summary.getDuplicateImports());
+                if (archive != null) {
+                    // the archive has no rows to checkpoint, without this it looks stale after a long entry
+                    fileImportService.touch(archive.getId());
+                }
+            });
+        } catch (RuntimeException e) {
+            if (archive != null) {
+                try {
+                    fileImportService.fail(archive.getId());
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        if (archive != null) {
+            fileImportService.complete(archive.getId(), total);
+        }
+        log.info("Imported {} entries of a zip upload: {} records", total.getEntries().size(), total.getTotalRecords());
+        return total;
+    }
+
+    // a file on local disk, parsed in parallel parts on the validation pool without copying it
+    public ImportSummary importFile(Path file, ImportProgress progress) {
+        FileImport fileImport = beginFileImport(checksum(new FileSystemResource(file)), "",
+                file.getFileName().toString(), false);
+        if (isDone(fileImport)) {
+            return fileImport.getSummary();
+        }
+        ImportSession session = newSession(progress, fileImport);
+        long partSize = importProperties.getFilePartSize().toBytes();
+        return run(session, () -> {
+            if (importValidationPool == null) {
+                FileUtils.streamFile(file, partSize, Runnable::run, 1, session);
+            } else {
+                FileUtils.streamFile(file, partSize, importValidationPool, importValidationPool.getParallelism(), session);
+            }
+        });
+    }
+
+    private ImportSummary run(ImportSession session, Runnable feed) {
+        try {
+            feed.run();
+            return session.finish();
+        } catch (RuntimeException e) {
+            session.abort();
+            throw e;
+        }
+    }
+
+    private ImportSession newSession(ImportProgress progress) {
+        return newSession(progress, null);
+    }
+
+    private ImportSession newSession(ImportProgress progress, FileImport fileImport) {
+        return new ImportSession(fxDealService, fxDealCopyService, errorService, validator, importProperties, mode(),
+                progress, importValidationPool, dealCache, importMetrics, admissionControl, fileImport,
+                fileImportService);
+    }
+
+    // null when the upload has no checksum and is not tracked
+    private FileImport beginFileImport(String checksum, String entryName, String fileName, boolean force) {
+        return checksum == null ? null : fileImportService.begin(checksum, entryName, fileName, force);
+    }
+
+    // imported before, the stored summary is the answer
+    private static boolean isDone(FileImport fileImport) {
+        return fileImport != null && fileImport.getSummary() != null;
+    }
+
+    private ImportMode mode() {
+        ImportMode mode = importProperties.getMode();
+        if (mode == ImportMode.COPY && !fxDealCopyService.isSupported()) {
+            mode = ImportMode.CHUNKED;
+        }
+        return mode;
+    }
+
+    // null when uploads are not tracked in file_imports
+    private String checksum(InputStreamSource source) {
+        return importProperties.getCheckpoints().isEnabled() ? FileUtils.checksum(source) : null;
     }
 
     public FxDealDTO getFxDealById(String dealId) {
-        FxDeal byDealId = fxDealService.getByDealId(dealId);
-        return FxDealDTO.builder()
-                .dealId(byDealId.getDealId())
-                .currencyTo(byDealId.getCurrencyTo())
-                .currencyFrom(byDealId.getCurrencyFrom())
-                .dealAmount(byDealId.getDealAmount())
-                .exchangeRate(byDealId.getExchangeRate())
-                .dealTimestamp(byDealId.getDealTimestamp())
+        FxDealDTO deal = dealCache.get(dealId, id -> fxDealService.findByDealId(id).map(this::toDto).orElse(null));
+        if (deal == null) {
+            throw new FxDealNotFoundException("Couldn't find deal with dealId: " + dealId);
+        }
+        return deal;
+    }
+
+    public CacheStatsDTO getCacheStats() {
+        return dealCache.stats();
+    }
+
+    public DealPage findDeals(String pair, LocalDateTime from, LocalDateTime to, String cursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1) {
+            throw new ValidationException("limit must be at least 1");
+        }
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        if (pair != null && !pair.matches("[A-Z]{6}")) {
+            throw new ValidationException("pair must be two 3-letter ISO codes, e.g. EURUSD");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ValidationException("from must be before to");
+        }
+
+        // one extra row tells whether there is a next page
+        List<FxDeal> deals = fxDealService.findDeals(
+                pair == null ? null : pair.substring(0, 3),
+                pair == null ? null : pair.substring(3),
+                from, to,
+                cursor == null ? null : DealCursor.decode(cursor),
+                pageSize + 1);
+        String nextCursor = null;
+        if (deals.size() > pageSize) {
+            deals = deals.subList(0, pageSize);
+            FxDeal last = deals.get(pageSize - 1);
+            nextCursor = new DealCursor(last.getDealTimestamp(), last.getId()).encode();
+        }
+        return DealPage.builder()
+                .deals(deals.stream().map(this::toDto).toList())
+                .nextCursor(nextCursor)
                 .build();
     }
 
-    public List<FxDealDTO> findAllDeals() {
-        return fxDealService.findAllDeals()
-                .stream().map(deal -> FxDealDTO.builder()
-                        .dealId(deal.getDealId())
-                        .currencyTo(deal.getCurrencyTo())
-                        .currencyFrom(deal.getCurrencyFrom())
-                        .dealAmount(deal.getDealAmount())
-                        .exchangeRate(deal.getExchangeRate())
-                        .dealTimestamp(deal.getDealTimestamp())
-                        .build())
-                .toList();
+    private FxDealDTO toDto(FxDeal deal) {
+        return FxDealDTO.builder()
+                .dealId(deal.getDealId())
+                .currencyTo(deal.getCurrencyTo())
+                .currencyFrom(deal.getCurrencyFrom())
+                .dealAmount(deal.getDealAmount())
+                .exchangeRate(deal.getExchangeRate())
+                .dealTimestamp(deal.getDealTimestamp())
+                .build();
     }
 }
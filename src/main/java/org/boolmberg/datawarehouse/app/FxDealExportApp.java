@@ -0,0 +1,85 @@
+package org.boolmberg.datawarehouse.app;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.dto.ExportFormat;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Full snapshot of fx_deals written straight to the response, one row at a time.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FxDealExportApp {
+
+    private final FxDealService fxDealService;
+    private final ObjectMapper objectMapper;
+
+    public void export(ExportFormat format, OutputStream outputStream) throws IOException {
+        long started = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16);
+        long exported = switch (format) {
+            case CSV -> exportCsv(writer);
+            case NDJSON -> exportNdjson(writer);
+        };
+        writer.flush();
+        log.info("Exported {} deals as {} in {} ms", exported, format, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private long exportCsv(Writer writer) throws IOException {
+        writer.write(FileUtils.CSV_HEADER);
+        writer.write('\n');
+        // the header goes out before the first row is fetched
+        writer.flush();
+        return exportRows(deal -> FileUtils.writeCsvRow(writer, deal));
+    }
+
+    private long exportNdjson(Writer writer) throws IOException {
+        try (SequenceWriter sequence = objectMapper.writerFor(FxDealDTO.class)
+                .withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValues(writer)) {
+            long exported = exportRows(sequence::write);
+            sequence.flush();
+            if (exported > 0) {
+                writer.write('\n');
+            }
+            return exported;
+        }
+    }
+
+    private long exportRows(RowWriter rowWriter) throws IOException {
+        try {
+            return fxDealService.exportDeals(deal -> {
+                try {
+                    rowWriter.write(deal);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // usually the client went away, stop reading from the database
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(FxDealDTO deal) throws IOException;
+    }
+}
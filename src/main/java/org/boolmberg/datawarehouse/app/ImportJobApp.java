@@ -0,0 +1,153 @@
+package org.boolmberg.datawarehouse.app;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.AdmissionLane;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.ImportJobDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.exception.ImportJobNotFoundException;
+import org.boolmberg.datawarehouse.exception.ImportRejectedException;
+import org.boolmberg.datawarehouse.exception.InvalidFileException;
+import org.boolmberg.datawarehouse.model.ImportJobStatus;
+import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ImportJobApp {
+
+    private final FxDealApp fxDealApp;
+    private final ThreadPoolExecutor importJobExecutor;
+    private final ImportProperties importProperties;
+    private final AdmissionControl admissionControl;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ImportJobDTO submitCsv(MultipartFile file, boolean force) {
+        if (file == null || file.isEmpty()) {
+            throw new InvalidFileException("file is invalid");
+        }
+        evictFinishedJobs();
+
+        // the multipart temp file is removed once the request completes, so keep our own copy
+        Path copy = createTempFile();
+        String checksum;
+        try {
+            checksum = FileUtils.copy(file, copy);
+        } catch (RuntimeException e) {
+            deleteQuietly(copy);
+            throw e;
+        }
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), file.getOriginalFilename());
+        jobs.put(job.id, job);
+        try {
+            importJobExecutor.execute(() -> run(job, copy, checksum, force));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            deleteQuietly(copy);
+            throw new ImportRejectedException("Too many imports in progress, retry later",
+                    admissionControl.retryAfter(AdmissionLane.BULK));
+        }
+        log.info("Queued import job {} for file {}", job.id, job.fileName);
+        return job.toDto();
+    }
+
+    public ImportJobDTO getJob(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ImportJobNotFoundException("Couldn't find import job with id: " + jobId);
+        }
+        return job.toDto();
+    }
+
+    private void run(ImportJob job, Path file, String checksum, boolean force) {
+        job.status = ImportJobStatus.RUNNING;
+        job.startedAt = LocalDateTime.now();
+        try {
+            job.summary = fxDealApp.uploadCsv(file, job.fileName, checksum, force, job.progress);
+            job.finish(ImportJobStatus.COMPLETED);
+            log.info("Import job {} completed: {} rows", job.id, job.progress.getRowsRead());
+        } catch (Exception e) {
+            log.error("Import job {} failed", job.id, e);
+            job.error = e.getMessage();
+            job.finish(ImportJobStatus.FAILED);
+        } finally {
+            deleteQuietly(file);
+        }
+    }
+
+    private Path createTempFile() {
+        try {
+            return Files.createTempFile("fx-import-", ".csv");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void evictFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(importProperties.getAsync().getJobRetention());
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Couldn't delete import file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static class ImportJob {
+        private final String id;
+        private final String fileName;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final ImportProgress progress = new ImportProgress();
+        private volatile ImportJobStatus status = ImportJobStatus.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile ImportSummary summary;
+        private volatile String error;
+
+        private ImportJob(String id, String fileName) {
+            this.id = id;
+            this.fileName = fileName;
+        }
+
+        private void finish(ImportJobStatus finalStatus) {
+            finishedAt = LocalDateTime.now();
+            status = finalStatus;
+        }
+
+        private ImportJobDTO toDto() {
+            return ImportJobDTO.builder()
+                    .jobId(id)
+                    .fileName(fileName)
+                    .status(status)
+                    .rowsRead(progress.getRowsRead())
+                    .imported(progress.getImported())
+                    .duplicates(progress.getDuplicates())
+                    .failed(progress.getFailed())
+                    .rowsPerSecond(progress.getRowsPerSecond())
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .summary(summary)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.boolmberg.datawarehouse.app;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Three-stage pipeline: the producing thread submits chunks, {@code stage} runs on the shared
+ * executor for several chunks at once, and a single sink thread consumes the results strictly
+ * in submission order. At most {@code maxInFlight} chunks are queued between the producer and
+ * the sink; once the sink falls behind {@link #submit} blocks, which keeps memory bounded.
+ */
+@Slf4j
+class ImportPipeline<I, O> {
+
+    private final Executor executor;
+    private final Function<I, O> stage;
+    private final Consumer<O> sink;
+    private final BlockingQueue<CompletableFuture<O>> inFlight;
+    private final CompletableFuture<O> endOfInput = CompletableFuture.completedFuture(null);
+    private final Thread sinkThread;
+    private volatile Throwable failure;
+
+    ImportPipeline(String name, Executor executor, int maxInFlight, Function<I, O> stage, Consumer<O> sink) {
+        this.executor = executor;
+        this.stage = stage;
+        this.sink = sink;
+        this.inFlight = new ArrayBlockingQueue<>(Math.max(1, maxInFlight));
+        this.sinkThread = Thread.ofVirtual().name(name).start(this::drain);
+    }
+
+    void submit(I input) {
+        rethrowFailure();
+        CompletableFuture<O> future = CompletableFuture.supplyAsync(() -> stage.apply(input), executor);
+        put(future);
+    }
+
+    // waits until every submitted chunk went through the sink
+    void finish() {
+        put(endOfInput);
+        try {
+            sinkThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the import pipeline", e);
+        }
+        rethrowFailure();
+    }
+
+    private void drain() {
+        while (true) {
+            CompletableFuture<O> next;
+            try {
+                next = inFlight.take();
+            } catch (InterruptedException e) {
+                failure = e;
+                return;
+            }
+            if (next == endOfInput) {
+                return;
+            }
+            if (failure != null) {
+                // keep draining so the producer never blocks, but stop doing work
+                continue;
+            }
+            try {
+                sink.accept(next.get());
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            if (failure != null) {
+                log.error("Import pipeline stopped", failure);
+            }
+        }
+    }
+
+    private void put(CompletableFuture<O> future) {
+        try {
+            inFlight.put(future);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing an import chunk", e);
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure;
+        if (t instanceof RuntimeException re) {
+            throw re;
+        }
+        if (t instanceof Error err) {
+            throw err;
+        }
+        if (t != null) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
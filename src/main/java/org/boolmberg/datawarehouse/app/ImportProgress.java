@@ -0,0 +1,72 @@
+package org.boolmberg.datawarehouse.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a running import. Written by the importing thread, readable from any
+ * other thread while the import is still going.
+ */
+public class ImportProgress {
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+
+    // called again for every entry of a zip upload, which all count towards the same progress
+    void start() {
+        if (startedNanos == 0) {
+            startedNanos = System.nanoTime();
+        }
+        finishedNanos = 0;
+    }
+
+    void finish() {
+        finishedNanos = System.nanoTime();
+    }
+
+    void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    void imported() {
+        imported.incrementAndGet();
+    }
+
+    void duplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    // rows read per second since the import started, frozen once it finished
+    public double getRowsPerSecond() {
+        long started = startedNanos;
+        if (started == 0) {
+            return 0;
+        }
+        long end = finishedNanos != 0 ? finishedNanos : System.nanoTime();
+        double seconds = (end - started) / 1_000_000_000d;
+        return seconds > 0 ? rowsRead.get() / seconds : 0;
+    }
+}
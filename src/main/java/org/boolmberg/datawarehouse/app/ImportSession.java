@@ -0,0 +1,610 @@
+package org.boolmberg.datawarehouse.app;
+
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.ImportMode;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.ChunkCheckpoint;
+import org.boolmberg.datawarehouse.dto.DealRow;
+import org.boolmberg.datawarehouse.dto.FileImport;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.exception.DuplicateDealException;
+import org.boolmberg.datawarehouse.metrics.ImportMetrics;
+import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.boolmberg.datawarehouse.service.DealCache;
+import org.boolmberg.datawarehouse.service.ErrorService;
+import org.boolmberg.datawarehouse.service.FileImportService;
+import org.boolmberg.datawarehouse.service.FxDealCopyService;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.boolmberg.datawarehouse.validator.FxDealValidator;
+import org.boolmberg.datawarehouse.validator.ValidationError;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * State of a single bulk import. Deals are pushed in file order, either with the next row
+ * number or with the one the parser numbered them by, and are either imported right away
+ * (ROW mode) or buffered until a chunk is full (CHUNKED and COPY modes). Full chunks are validated in parallel and persisted one
+ * after the other in file order when the pipeline is enabled. A checkpointed import (see
+ * {@link FileImportService}) moves its checkpoint with every chunk, or every chunk size of rows in
+ * ROW mode, and skips the rows an earlier attempt already committed.
+ */
+@Slf4j
+class ImportSession implements Consumer<FxDealDTO>, FileUtils.RowSink {
+
+    private final FxDealService fxDealService;
+    private final FxDealCopyService fxDealCopyService;
+    private final ErrorService errorService;
+    private final FxDealValidator validator;
+    private final DealCache dealCache;
+    private final ImportMode mode;
+    private final int chunkSize;
+
+    private final String importId;
+    private final ImportSummary importSummary;
+    // null when the upload is not tracked in file_imports
+    private final FileImport fileImport;
+    private final FileImportService fileImportService;
+    private final ImportProgress progress;
+    private final int seenDealIdsLimit;
+    private final int summaryErrorLimit;
+    private final Set<String> seenDealIds = new HashSet<>();
+    private final ImportPipeline<List<DealRow>, ValidatedChunk> pipeline;
+    private final ImportMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final long startedAt = System.nanoTime();
+    private List<DealRow> chunk;
+    private int rowNumber;
+    private int records;
+    // time spent producing rows, i.e. outside accept()
+    private long parseNanos;
+    private long resumedAt = startedAt;
+    // ROW mode takes the validator's upper bound once per chunk size of rows, as the chunked modes do
+    private LocalDateTime maxDealTimestamp;
+    // ROW mode: the last row and the summary counts the checkpoint was moved to
+    private int checkpointedRow;
+    private int checkpointedImports;
+    private int checkpointedDuplicates;
+    private int checkpointedFailures;
+    // a flush failed: the checkpoint must not move past rows whose errors may be missing
+    private boolean errorsLost;
+    private boolean closed;
+
+    ImportSession(FxDealService fxDealService, FxDealCopyService fxDealCopyService, ErrorService errorService,
+                  FxDealValidator validator, ImportProperties properties, ImportMode mode,
+                  ImportProgress progress, Executor validationExecutor, DealCache dealCache,
+                  ImportMetrics metrics, AdmissionControl admissionControl, FileImport fileImport,
+                  FileImportService fileImportService) {
+        this.fxDealService = fxDealService;
+        this.fxDealCopyService = fxDealCopyService;
+        this.errorService = errorService;
+        this.validator = validator;
+        this.dealCache = dealCache;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.fileImport = fileImport;
+        this.fileImportService = fileImportService;
+        this.importId = fileImport != null ? fileImport.getImportId() : UUID.randomUUID().toString();
+        this.checkpointedRow = fileImport != null ? fileImport.getLastRow() : 0;
+        this.importSummary = ImportSummary.builder()
+                .importId(importId)
+                .totalRecords(0)
+                .successfulImports(0)
+                .failedImports(0)
+                .duplicateImports(0)
+                .build();
+        this.mode = mode;
+        this.progress = progress;
+        this.chunkSize = Math.max(1, properties.getChunkSize());
+        this.seenDealIdsLimit = properties.getSeenDealIdsLimit();
+        this.summaryErrorLimit = properties.getErrors().getSummaryLimit();
+        this.chunk = new ArrayList<>(mode == ImportMode.ROW ? 0 : chunkSize);
+        ImportProperties.Pipeline pipelineProperties = properties.getPipeline();
+        this.pipeline = mode == ImportMode.ROW || validationExecutor == null || !pipelineProperties.isEnabled()
+                ? null
+                : new ImportPipeline<>("fx-import-persist", validationExecutor,
+                        pipelineProperties.getMaxInFlightChunks(), this::validateChunk, this::persistChunk);
+        progress.start();
+        metrics.importStarted();
+    }
+
+    @Override
+    public void accept(FxDealDTO deal) {
+        add(new DealRow(rowNumber + 1, deal));
+    }
+
+    @Override
+    public void accept(int rowNumber, FxDealDTO deal) {
+        add(new DealRow(rowNumber, deal));
+    }
+
+    // filed as a validation error in turn with the deals around it
+    @Override
+    public void reject(int rowNumber, String dealId, String message) {
+        add(new DealRow(rowNumber, FxDealDTO.builder().dealId(dealId).build(), message));
+    }
+
+    private void add(DealRow row) {
+        parseNanos += System.nanoTime() - resumedAt;
+        rowNumber = row.getRowNumber();
+        if (fileImport != null && rowNumber <= fileImport.getLastRow()) {
+            // committed by an earlier attempt
+            resumedAt = System.nanoTime();
+            return;
+        }
+        records++;
+        progress.rowRead();
+        if (records % chunkSize == 0) {
+            recordParseTime();
+        }
+        if (mode == ImportMode.ROW) {
+            if ((records - 1) % chunkSize == 0) {
+                maxDealTimestamp = validator.maxDealTimestamp();
+            }
+            importRow(row);
+            if (records % chunkSize == 0) {
+                checkpointRows();
+            }
+        } else {
+            chunk.add(row);
+            if (chunk.size() >= chunkSize) {
+                submitChunk();
+            }
+        }
+        resumedAt = System.nanoTime();
+    }
+
+    ImportSummary finish() {
+        parseNanos += System.nanoTime() - resumedAt;
+        recordParseTime();
+        submitChunk();
+        if (pipeline != null) {
+            pipeline.finish();
+        }
+        flushErrors();
+        importSummary.setTotalRecords(records);
+        if (fileImport != null) {
+            mergeResumedCounts();
+            fileImportService.complete(fileImport.getId(), importSummary);
+        }
+        close();
+        return importSummary;
+    }
+
+    // the input failed part way: let chunks already handed over complete, drop the partial one
+    void abort() {
+        if (pipeline != null) {
+            try {
+                pipeline.finish();
+            } catch (RuntimeException e) {
+                log.warn("Import pipeline failed while aborting: {}", e.getMessage());
+            }
+        }
+        try {
+            flushErrors();
+        } catch (RuntimeException e) {
+            log.warn("Import errors of {} were not all written: {}", importId, e.getMessage());
+        }
+        if (fileImport != null) {
+            try {
+                checkpointRows();
+                fileImportService.fail(fileImport.getId());
+            } catch (RuntimeException e) {
+                // the lease runs out and the next upload resumes anyway
+                log.warn("Import {} was not marked failed: {}", importId, e.getMessage());
+            }
+        }
+        close();
+    }
+
+    // the summary covers the whole file, errors of rows up to the checkpoint are in import_errors
+    private void mergeResumedCounts() {
+        if (fileImport.getLastRow() == 0) {
+            return;
+        }
+        int prior = fileImport.getImported() + fileImport.getDuplicates() + fileImport.getFailed();
+        importSummary.setResumedAfterRow(fileImport.getLastRow());
+        importSummary.setTotalRecords(records + prior);
+        importSummary.setSuccessfulImports(importSummary.getSuccessfulImports() + fileImport.getImported());
+        importSummary.setDuplicateImports(importSummary.getDuplicateImports() + fileImport.getDuplicates());
+        importSummary.setFailedImports(importSummary.getFailedImports() + fileImport.getFailed());
+    }
+
+    private void close() {
+        if (!closed) {
+            closed = true;
+            progress.finish();
+            metrics.importFinished(System.nanoTime() - startedAt);
+        }
+    }
+
+    private void recordParseTime() {
+        if (parseNanos > 0) {
+            metrics.recordStage(ImportMetrics.Stage.PARSE, parseNanos);
+            parseNanos = 0;
+        }
+    }
+
+    private void submitChunk() {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<DealRow> rows = chunk;
+        chunk = new ArrayList<>(chunkSize);
+        if (pipeline != null) {
+            pipeline.submit(rows);
+        } else {
+            persistChunk(validateChunk(rows));
+        }
+    }
+
+    // stateless, runs on the validation executor for several chunks at once
+    private ValidatedChunk validateChunk(List<DealRow> rows) {
+        long started = System.nanoTime();
+        LocalDateTime maxDealTimestamp = validator.maxDealTimestamp();
+        String[] rejections = new String[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).getRejection() != null) {
+                rejections[i] = rows.get(i).getRejection();
+                continue;
+            }
+            FxDealDTO deal = rows.get(i).getDeal();
+            ValidationError error = validator.check(deal, maxDealTimestamp);
+            if (error != null) {
+                rejections[i] = error.message(deal);
+            }
+        }
+        metrics.recordStage(ImportMetrics.Stage.VALIDATE, System.nanoTime() - started);
+        return new ValidatedChunk(rows, rejections);
+    }
+
+    // runs for one chunk at a time in file order, owns the summary and the seen deal ids
+    private void persistChunk(ValidatedChunk validated) {
+        List<DealRow> rows = validated.rows;
+        int size = rows.size();
+        RowStatus[] statuses = new RowStatus[size];
+        Set<String> chunkDealIds = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String dealId = rows.get(i).getDeal().getDealId();
+            if (validated.rejections[i] != null) {
+                statuses[i] = RowStatus.INVALID;
+            } else if (seenDealIds.contains(dealId)) {
+                statuses[i] = RowStatus.DUPLICATE;
+            } else if (!chunkDealIds.add(dealId)) {
+                statuses[i] = RowStatus.REPEATED_IN_CHUNK;
+            } else {
+                statuses[i] = RowStatus.PENDING;
+            }
+        }
+
+        ChunkCheckpoint checkpoint = fileImport == null ? null : ChunkCheckpoint.builder()
+                .fileImportId(fileImport.getId())
+                .importId(importId)
+                .lastRow(rows.get(size - 1).getRowNumber())
+                .build();
+        int imported = importSummary.getSuccessfulImports();
+        int duplicates = importSummary.getDuplicateImports();
+        int failed = importSummary.getFailedImports();
+        boolean committed = false;
+        boolean checkpointed = false;
+        admissionControl.acquireBulkConnection();
+        try {
+            if (mode == ImportMode.COPY) {
+                checkpointed = copyChunk(rows, validated.rejections, statuses, checkpoint);
+            } else {
+                checkpointed = insertChunk(rows, validated.rejections, statuses, chunkDealIds, checkpoint);
+            }
+            committed = true;
+        } catch (Exception e) {
+            log.warn("Chunk starting at row {} failed, retrying row by row: {}",
+                    rows.get(0).getRowNumber(), e.getMessage());
+        } finally {
+            admissionControl.releaseBulkConnection();
+        }
+
+        // walk the chunk in file order so errors are reported exactly as in ROW mode; a checkpointed
+        // chunk wrote its errors with the checkpoint, the others queue them
+        for (int i = 0; i < size; i++) {
+            DealRow row = rows.get(i);
+            String dealId = row.getDeal().getDealId();
+            switch (statuses[i]) {
+                case INVALID -> chunkError(row, validated.rejections[i], ImportErrorType.VALIDATION, checkpointed);
+                case DUPLICATE -> {
+                    chunkError(row, DuplicateDealException.alreadyExistsMessage(dealId), ImportErrorType.DUPLICATE,
+                            checkpointed);
+                    rememberDealId(dealId);
+                }
+                case REPEATED_IN_CHUNK -> {
+                    if (committed) {
+                        chunkError(row, DuplicateDealException.alreadyExistsMessage(dealId),
+                                ImportErrorType.DUPLICATE, checkpointed);
+                    } else {
+                        replayRow(row);
+                    }
+                }
+                case PENDING -> {
+                    if (committed) {
+                        recordSuccess(row.getDeal());
+                        rememberDealId(dealId);
+                    } else {
+                        replayRow(row);
+                    }
+                }
+            }
+        }
+
+        if (checkpoint != null && !checkpointed) {
+            // nothing went to the database with the chunk, or its rows were replayed one by one
+            advance(checkpoint, imported, duplicates, failed);
+        }
+    }
+
+    // ROW mode commits every deal on its own, the checkpoint follows every chunk size of rows so
+    // the import keeps its lease and a resume repeats no more than the rows since the last one
+    private void checkpointRows() {
+        if (fileImport == null || mode != ImportMode.ROW || rowNumber <= checkpointedRow || errorsLost) {
+            return;
+        }
+        ChunkCheckpoint checkpoint = ChunkCheckpoint.builder()
+                .fileImportId(fileImport.getId())
+                .importId(importId)
+                .lastRow(rowNumber)
+                .build();
+        advance(checkpoint, checkpointedImports, checkpointedDuplicates, checkpointedFailures);
+        checkpointedRow = rowNumber;
+        checkpointedImports = importSummary.getSuccessfulImports();
+        checkpointedDuplicates = importSummary.getDuplicateImports();
+        checkpointedFailures = importSummary.getFailedImports();
+    }
+
+    // moves the checkpoint by what the summary counted since the given counts, once the errors
+    // of the rows it covers are written
+    private void advance(ChunkCheckpoint checkpoint, int imported, int duplicates, int failed) {
+        flushErrors();
+        checkpoint.setImported(importSummary.getSuccessfulImports() - imported);
+        checkpoint.setDuplicates(importSummary.getDuplicateImports() - duplicates);
+        checkpoint.setFailed(importSummary.getFailedImports() - failed);
+        // queued and flushed above
+        checkpoint.setErrors(new ArrayList<>());
+        admissionControl.acquireBulkConnection();
+        try {
+            fileImportService.advance(checkpoint);
+        } finally {
+            admissionControl.releaseBulkConnection();
+        }
+    }
+
+    private void flushErrors() {
+        try {
+            errorService.flush(importId);
+        } catch (RuntimeException e) {
+            errorsLost = true;
+            throw e;
+        }
+    }
+
+    // counts the rows the chunk's transaction settles before it commits, PENDING as imported, and
+    // hands it their errors to write with the checkpoint
+    private static void count(List<DealRow> rows, String[] rejections, RowStatus[] statuses,
+                              ChunkCheckpoint checkpoint) {
+        int imported = 0;
+        int duplicates = 0;
+        int failed = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            DealRow row = rows.get(i);
+            String dealId = row.getDeal().getDealId();
+            switch (statuses[i]) {
+                case PENDING -> imported++;
+                case INVALID -> {
+                    failed++;
+                    checkpoint.getErrors().add(error(row, rejections[i], ImportErrorType.VALIDATION));
+                }
+                case DUPLICATE, REPEATED_IN_CHUNK -> {
+                    duplicates++;
+                    checkpoint.getErrors().add(error(row, DuplicateDealException.alreadyExistsMessage(dealId),
+                            ImportErrorType.DUPLICATE));
+                }
+            }
+        }
+        checkpoint.setImported(imported);
+        checkpoint.setDuplicates(duplicates);
+        checkpoint.setFailed(failed);
+    }
+
+    private static ImportSummary.ImportErrorDto error(DealRow row, String message, ImportErrorType type) {
+        return ImportSummary.ImportErrorDto.builder()
+                .rowNumber(row.getRowNumber())
+                .dealId(row.getDeal().getDealId())
+                .errorMessage(message)
+                .errorType(type.name())
+                .build();
+    }
+
+    // returns whether the checkpoint was moved in the chunk's transaction
+    private boolean insertChunk(List<DealRow> rows, String[] rejections, RowStatus[] statuses,
+                                Set<String> chunkDealIds, ChunkCheckpoint checkpoint) {
+        Set<String> existing = Set.of();
+        if (!chunkDealIds.isEmpty()) {
+            long started = System.nanoTime();
+            metrics.dbCall(ImportMetrics.DbCall.LOOKUP);
+            existing = fxDealService.findExistingDealIds(chunkDealIds);
+            metrics.recordStage(ImportMetrics.Stage.DEDUP, System.nanoTime() - started);
+        }
+        List<FxDealDTO> toInsert = new ArrayList<>(rows.size());
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != RowStatus.PENDING) {
+                continue;
+            }
+            FxDealDTO deal = rows.get(i).getDeal();
+            if (existing.contains(deal.getDealId())) {
+                statuses[i] = RowStatus.DUPLICATE;
+            } else {
+                toInsert.add(deal);
+            }
+        }
+        if (toInsert.isEmpty()) {
+            return false;
+        }
+        long started = System.nanoTime();
+        metrics.dbCall(ImportMetrics.DbCall.INSERT_BATCH);
+        if (checkpoint == null) {
+            fxDealService.importDeals(toInsert);
+        } else {
+            count(rows, rejections, statuses, checkpoint);
+            fxDealService.importDeals(toInsert, checkpoint);
+        }
+        metrics.recordStage(ImportMetrics.Stage.INSERT, System.nanoTime() - started);
+        return checkpoint != null;
+    }
+
+    // the fx_deal_keys trigger replaces the lookup: pending rows that were not inserted already existed
+    private boolean copyChunk(List<DealRow> rows, String[] rejections, RowStatus[] statuses,
+                              ChunkCheckpoint checkpoint) {
+        List<DealRow> toCopy = new ArrayList<>(rows.size());
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == RowStatus.PENDING) {
+                toCopy.add(rows.get(i));
+            }
+        }
+        if (toCopy.isEmpty()) {
+            return false;
+        }
+        long started = System.nanoTime();
+        metrics.dbCall(ImportMetrics.DbCall.COPY);
+        Set<String> inserted;
+        if (checkpoint == null) {
+            inserted = fxDealCopyService.copyDeals(toCopy);
+        } else {
+            count(rows, rejections, statuses, checkpoint);
+            inserted = fxDealCopyService.copyDeals(toCopy, checkpoint);
+        }
+        metrics.recordStage(ImportMetrics.Stage.COPY, System.nanoTime() - started);
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == RowStatus.PENDING && !inserted.contains(rows.get(i).getDeal().getDealId())) {
+                statuses[i] = RowStatus.DUPLICATE;
+            }
+        }
+        return checkpoint != null;
+    }
+
+    private void replayRow(DealRow row) {
+        ImportErrorType error = importRow(row);
+        if (error == null || error == ImportErrorType.DUPLICATE) {
+            rememberDealId(row.getDeal().getDealId());
+        }
+    }
+
+    // Deal ids that are known to be in the database after an earlier chunk. Later repeats are
+    // flagged without a lookup; past the limit the per-chunk lookup alone still catches them.
+    private void rememberDealId(String dealId) {
+        if (seenDealIds.size() < seenDealIdsLimit) {
+            seenDealIds.add(dealId);
+        }
+    }
+
+    // returns the error type the row was filed under, null when it was imported
+    private ImportErrorType importRow(DealRow row) {
+        int rowNumber = row.getRowNumber();
+        FxDealDTO deal = row.getDeal();
+        if (row.getRejection() != null) {
+            return recordError(rowNumber, deal.getDealId(), row.getRejection(), ImportErrorType.VALIDATION);
+        }
+        // rows replayed from a chunk were checked with it
+        if (mode == ImportMode.ROW) {
+            ValidationError error = validator.check(deal, maxDealTimestamp);
+            if (error != null) {
+                return recordError(rowNumber, deal.getDealId(), error.message(deal), ImportErrorType.VALIDATION);
+            }
+        }
+        long started = System.nanoTime();
+        metrics.dbCall(ImportMetrics.DbCall.ROW_IMPORT);
+        admissionControl.acquireBulkConnection();
+        try {
+            // checked above or with its chunk, the service's validating entry point would check it again
+            fxDealService.importValidatedDeal(deal);
+            metrics.recordStage(ImportMetrics.Stage.ROW_IMPORT, System.nanoTime() - started);
+            recordSuccess(deal);
+            return null;
+        } catch (DuplicateDealException e) {
+            log.debug("Row {} is a duplicate: {}", rowNumber, e.getMessage());
+            return recordError(rowNumber, deal.getDealId(), e.getMessage(), ImportErrorType.DUPLICATE);
+        } catch (Exception e) {
+            log.error("Row {} failed", rowNumber, e);
+            // import_errors.error_message is NOT NULL
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            return recordError(rowNumber, deal.getDealId(), message, ImportErrorType.UNKNOWN);
+        } finally {
+            admissionControl.releaseBulkConnection();
+        }
+    }
+
+    private void recordSuccess(FxDealDTO deal) {
+        dealCache.put(deal);
+        metrics.row(null);
+        importSummary.setSuccessfulImports(importSummary.getSuccessfulImports() + 1);
+        progress.imported();
+    }
+
+    private ImportErrorType recordError(int rowNumber, String dealId, String message, ImportErrorType type) {
+        errorService.addImportError(importId, rowNumber, dealId, message, type);
+        return countError(rowNumber, dealId, message, type);
+    }
+
+    private void chunkError(DealRow row, String message, ImportErrorType type, boolean written) {
+        if (written) {
+            countError(row.getRowNumber(), row.getDeal().getDealId(), message, type);
+        } else {
+            recordError(row.getRowNumber(), row.getDeal().getDealId(), message, type);
+        }
+    }
+
+    // the summary side of an error, import_errors gets it from the caller
+    private ImportErrorType countError(int rowNumber, String dealId, String message, ImportErrorType type) {
+        metrics.row(type);
+        if (type == ImportErrorType.DUPLICATE) {
+            importSummary.setDuplicateImports(importSummary.getDuplicateImports() + 1);
+            progress.duplicate();
+        } else {
+            importSummary.setFailedImports(importSummary.getFailedImports() + 1);
+            progress.failed();
+        }
+        // a file full of bad rows would otherwise hold every error in memory until it ends
+        if (importSummary.getErrors().size() < summaryErrorLimit) {
+            importSummary.addError(ImportSummary.ImportErrorDto.builder()
+                    .errorMessage(message)
+                    .dealId(dealId)
+                    .errorType(type.name())
+                    .rowNumber(rowNumber)
+                    .build());
+        }
+        return type;
+    }
+
+    private static final class ValidatedChunk {
+        private final List<DealRow> rows;
+        // validation message per row, null when the row is valid
+        private final String[] rejections;
+
+        private ValidatedChunk(List<DealRow> rows, String[] rejections) {
+            this.rows = rows;
+            this.rejections = rejections;
+        }
+    }
+
+    private enum RowStatus {
+        PENDING,
+        INVALID,
+        // already in the database, or repeats a deal imported by an earlier chunk of this file
+        DUPLICATE,
+        // repeats a deal that sits earlier in the same chunk
+        REPEATED_IN_CHUNK
+    }
+}
@@ -20,12 +20,12 @@ public class FxDealImportAspect {
 
     @Around("execution(* org.boolmberg.datawarehouse.service.FxDealService.importDeal(..)) && args(dealDto)")
     public Object aroundImportDeal(ProceedingJoinPoint joinPoint, FxDealDTO dealDto) throws Exception {
-        log.info("Starting import: {}", dealDto.getDealId());
+        log.debug("Starting import: {}", dealDto.getDealId());
         validator.validate(dealDto);
 
         try {
             FxDeal result = (FxDeal) joinPoint.proceed();
-            log.info("Successfully imported FX deal: {}", dealDto.getDealId());
+            log.debug("Successfully imported FX deal: {}", dealDto.getDealId());
             return result;
 
         } catch (Exception e) {
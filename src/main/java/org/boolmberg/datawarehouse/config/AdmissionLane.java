@@ -0,0 +1,8 @@
+package org.boolmberg.datawarehouse.config;
+
+public enum AdmissionLane {
+    // uploads and bulk imports that run for seconds to minutes
+    BULK,
+    // single-deal writes and lookups, expected back in milliseconds
+    INTERACTIVE
+}
@@ -0,0 +1,35 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.admission")
+public class AdmissionProperties {
+
+    private Lane bulk = new Lane(2, Duration.ZERO, Duration.ofSeconds(10));
+
+    private Lane interactive = new Lane(100, Duration.ofMillis(200), Duration.ofSeconds(1));
+
+    // connections bulk imports hold at once, whatever started them; keep it below the pool size
+    private int bulkConnections = 4;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Lane {
+        // requests of the lane running at the same time
+        private int maxConcurrent;
+        // how long a request waits for a free slot before it is turned away with 429
+        private Duration maxWait;
+        // sent back as Retry-After with the 429
+        private Duration retryAfter;
+    }
+}
@@ -0,0 +1,19 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.cache")
+public class DealCacheProperties {
+
+    // deals kept in memory for GET /fx-deals/{dealId}, 0 disables the cache
+    private long maximumSize = 100_000;
+
+    // how long an unknown deal id is answered from the cache
+    private Duration negativeTtl = Duration.ofSeconds(30);
+}
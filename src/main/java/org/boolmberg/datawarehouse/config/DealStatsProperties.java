@@ -0,0 +1,16 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.stats")
+public class DealStatsProperties {
+
+    // hourly buckets this recent are also kept in memory and served without a query
+    private Duration hotWindow = Duration.ofHours(48);
+}
@@ -0,0 +1,25 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.drop-folder")
+public class DropFolderProperties {
+
+    private boolean enabled = false;
+
+    // watched for new files; done/ and failed/ are created inside it
+    private Path directory = Path.of("drop");
+
+    // glob on the file name, so files still being written under another name are left alone
+    private String pattern = "*.csv";
+
+    // a file is imported once its size and modification time stop changing for this long
+    private Duration settleTime = Duration.ofSeconds(2);
+}
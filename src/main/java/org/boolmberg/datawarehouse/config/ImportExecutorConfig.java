@@ -0,0 +1,34 @@
+package org.boolmberg.datawarehouse.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ImportExecutorConfig {
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor importJobExecutor(ImportProperties importProperties, MeterRegistry meterRegistry) {
+        ImportProperties.Async async = importProperties.getAsync();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(async.getMaxConcurrent(), async.getMaxConcurrent(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(async.getQueueCapacity()),
+                Thread.ofVirtual().name("fx-import-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        // executor.active / executor.queued / executor.queue.remaining{name=fx-import-jobs}
+        new ExecutorServiceMetrics(executor, "fx-import-jobs", List.of()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool importValidationPool(ImportProperties importProperties) {
+        return new ForkJoinPool(Math.max(1, importProperties.getPipeline().getValidationThreads()));
+    }
+}
@@ -0,0 +1,11 @@
+package org.boolmberg.datawarehouse.config;
+
+public enum ImportMode {
+    // one REQUIRES_NEW transaction per deal
+    ROW,
+    // chunkSize deals per transaction with JDBC insert batching, row-by-row fallback on failure
+    CHUNKED,
+    // PostgreSQL COPY into a staging table, moved with one INSERT ... SELECT whose taken deal ids the
+    // fx_deal_keys trigger skips; CHUNKED on other databases
+    COPY
+}
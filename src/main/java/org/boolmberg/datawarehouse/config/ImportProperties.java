@@ -0,0 +1,75 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.import")
+public class ImportProperties {
+
+    private ImportMode mode = ImportMode.ROW;
+
+    // keep aligned with hibernate.jdbc.batch_size so one chunk flushes as full JDBC batches
+    private int chunkSize = 500;
+
+    // upper bound on deal ids remembered per file for intra-file duplicate detection
+    private int seenDealIdsLimit = 1_000_000;
+
+    // files on local disk are memory-mapped and parsed in parts of about this size in parallel
+    private DataSize filePartSize = DataSize.ofMegabytes(8);
+
+    private Async async = new Async();
+
+    private Pipeline pipeline = new Pipeline();
+
+    private Errors errors = new Errors();
+
+    private Checkpoints checkpoints = new Checkpoints();
+
+    @Getter
+    @Setter
+    public static class Async {
+        // imports running at the same time, each on its own virtual thread
+        private int maxConcurrent = 2;
+        // accepted uploads waiting for a free slot, further uploads are rejected
+        private int queueCapacity = 16;
+        // how long finished jobs stay queryable
+        private Duration jobRetention = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Pipeline {
+        // CHUNKED and COPY only: validate chunks in parallel while the previous ones are persisted
+        private boolean enabled = true;
+        // threads of the shared validation pool
+        private int validationThreads = Runtime.getRuntime().availableProcessors();
+        // chunks parsed but not yet persisted, per import; the parser blocks beyond this
+        private int maxInFlightChunks = 8;
+    }
+
+    @Getter
+    @Setter
+    public static class Errors {
+        // import errors waiting for the writer; importing threads block while it is full
+        private int queueCapacity = 10_000;
+        // rows per JDBC batch written to import_errors
+        private int batchSize = 500;
+        // errors listed in an import's summary, the rest are only counted and kept in import_errors
+        private int summaryLimit = 1_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Checkpoints {
+        // file uploads are tracked by checksum and resume after the last checkpointed row
+        private boolean enabled = true;
+        // a running import whose checkpoint is older than this is taken to be dead and is resumed
+        private Duration staleAfter = Duration.ofMinutes(5);
+    }
+}
@@ -0,0 +1,17 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.partitions")
+public class PartitionProperties {
+
+    // monthly fx_deals partitions kept created beyond the current month
+    private int monthsAhead = 3;
+
+    // when the partitions are topped up, besides on startup
+    private String cron = "0 0 3 * * *";
+}
@@ -0,0 +1,26 @@
+package org.boolmberg.datawarehouse.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fx-deals.recent-store")
+public class RecentDealStoreProperties {
+
+    // columnar copy of recent deals for GET /fx-deals/recent/scan, loaded on startup and fed on import
+    private boolean enabled = false;
+
+    // deals older than this are not kept
+    private Duration retention = Duration.ofDays(3);
+
+    // deals per segment, the unit of parallel scans and of eviction
+    private int segmentSize = 65_536;
+
+    // oldest segments are evicted beyond this, about 26 bytes per deal
+    private DataSize memoryBudget = DataSize.ofMegabytes(256);
+}
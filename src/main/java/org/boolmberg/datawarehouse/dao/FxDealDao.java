@@ -1,13 +1,30 @@
 package org.boolmberg.datawarehouse.dao;
 
+import jakarta.persistence.QueryHint;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
 import org.boolmberg.datawarehouse.model.FxDeal;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface FxDealDao extends JpaRepository<FxDeal, Long> {
-
-    boolean existsByDealId(String fxDealId);
+public interface FxDealDao extends JpaRepository<FxDeal, Long>, JpaSpecificationExecutor<FxDeal> {
 
     Optional<FxDeal> findByDealId(String fxDealId);
+
+    @Query("select d.dealId from FxDeal d where d.dealId in :dealIds")
+    List<String> findExistingDealIds(@Param("dealIds") Collection<String> dealIds);
+
+    // forward-only cursor of DTOs, nothing is kept in the persistence context
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new org.boolmberg.datawarehouse.dto.FxDealDTO(d.dealId, d.currencyFrom, d.currencyTo, "
+            + "d.dealTimestamp, d.dealAmount, d.exchangeRate) from FxDeal d order by d.id")
+    Stream<FxDealDTO> streamAllDeals();
 }
@@ -0,0 +1,49 @@
+package org.boolmberg.datawarehouse.dao;
+
+import org.boolmberg.datawarehouse.dto.DealCursor;
+import org.boolmberg.datawarehouse.model.FxDeal;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters for deal listings. Every listing is ordered by (dealTimestamp, id), which on PostgreSQL
+ * is a range scan of idx_fx_deals_timestamp_id per monthly partition. Only a listing bounded on
+ * dealTimestamp, by from/to or by the lower bound of a cursor, skips the partitions out of range;
+ * without a bound every partition is opened and their scans are merged up to the limit.
+ */
+public final class FxDealSpecifications {
+
+    public static final Sort KEYSET_ORDER = Sort.by("dealTimestamp", "id");
+
+    private FxDealSpecifications() {
+    }
+
+    public static Specification<FxDeal> currencyPair(String currencyFrom, String currencyTo) {
+        return (root, query, cb) -> cb.and(
+                cb.equal(root.get("currencyFrom"), currencyFrom),
+                cb.equal(root.get("currencyTo"), currencyTo));
+    }
+
+    // from inclusive, to exclusive
+    public static Specification<FxDeal> dealTimestampBetween(LocalDateTime from, LocalDateTime to) {
+        return (root, query, cb) -> {
+            if (from != null && to != null) {
+                return cb.and(cb.greaterThanOrEqualTo(root.get("dealTimestamp"), from),
+                        cb.lessThan(root.get("dealTimestamp"), to));
+            }
+            return from != null
+                    ? cb.greaterThanOrEqualTo(root.get("dealTimestamp"), from)
+                    : cb.lessThan(root.get("dealTimestamp"), to);
+        };
+    }
+
+    // rows strictly after the cursor in KEYSET_ORDER; the plain >= keeps the index range tight
+    public static Specification<FxDeal> after(DealCursor cursor) {
+        return (root, query, cb) -> cb.and(
+                cb.greaterThanOrEqualTo(root.get("dealTimestamp"), cursor.dealTimestamp()),
+                cb.or(cb.greaterThan(root.get("dealTimestamp"), cursor.dealTimestamp()),
+                        cb.greaterThan(root.get("id"), cursor.id())));
+    }
+}
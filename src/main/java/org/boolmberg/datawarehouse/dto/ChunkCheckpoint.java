@@ -0,0 +1,27 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// how far a committed chunk moves its file import, written in the chunk's transaction
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChunkCheckpoint {
+    private long fileImportId;
+    private String importId;
+    private int lastRow;
+    private int imported;
+    private int duplicates;
+    private int failed;
+
+    // errors of the rows the checkpoint covers, written with it to import_errors
+    @Builder.Default
+    private List<ImportSummary.ImportErrorDto> errors = new ArrayList<>();
+}
@@ -0,0 +1,18 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DealPage {
+    private List<FxDealDTO> deals;
+    // pass back as cursor to get the next page, null on the last page
+    private String nextCursor;
+}
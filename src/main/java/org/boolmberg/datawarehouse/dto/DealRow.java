@@ -0,0 +1,17 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class DealRow {
+    private int rowNumber;
+    private FxDealDTO deal;
+    // why the record couldn't be read into a deal, null when it could
+    private String rejection;
+
+    public DealRow(int rowNumber, FxDealDTO deal) {
+        this(rowNumber, deal, null);
+    }
+}
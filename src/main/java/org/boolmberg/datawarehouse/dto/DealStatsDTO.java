@@ -0,0 +1,24 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DealStatsDTO {
+    private String currencyFrom;
+    private String currencyTo;
+    private LocalDateTime bucketStart;
+    private long dealCount;
+    // sum of dealAmount
+    private BigDecimal notional;
+    // exchange rate weighted by dealAmount
+    private Double averageRate;
+}
@@ -0,0 +1,23 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a row of file_imports as an import starts: where it resumes and what was done before
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FileImport {
+    private long id;
+    private String importId;
+    // rows up to and including this one were committed by an earlier attempt, 0 for a new import
+    private int lastRow;
+    private int imported;
+    private int duplicates;
+    private int failed;
+    // set when the file was imported before: the stored summary, there is nothing left to do
+    private ImportSummary summary;
+}
@@ -0,0 +1,29 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.boolmberg.datawarehouse.model.ImportJobStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportJobDTO {
+    private String jobId;
+    private String fileName;
+    private ImportJobStatus status;
+    private long rowsRead;
+    private long imported;
+    private long duplicates;
+    private long failed;
+    private double rowsPerSecond;
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+    private ImportSummary summary;
+}
@@ -1,6 +1,6 @@
 package org.boolmberg.datawarehouse.dto;
 
-
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,11 +14,30 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class ImportSummary {
+    // groups the rows of import_errors written by this import
+    private String importId;
     private int totalRecords;
     private int successfulImports;
     private int failedImports;
     private int duplicateImports;
 
+    // zip uploads: the archive entry this summary is about
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String fileName;
+
+    // zip uploads: one summary per archive entry, the counts above are their totals
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ImportSummary> entries;
+
+    // resumed file imports: rows up to this one were committed by an earlier attempt, whose
+    // counts are included above
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer resumedAfterRow;
+
+    // the same file was imported before: this is that import's summary, nothing was written again
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean alreadyImported;
+
 
     public void addError(ImportErrorDto importErrorDto) {
         if (errors == null)
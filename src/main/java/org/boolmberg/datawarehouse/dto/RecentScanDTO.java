@@ -0,0 +1,46 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RecentScanDTO {
+    private long deals;
+    private BigDecimal notional;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    // exchange rate weighted by dealAmount
+    private Double averageRate;
+    // deals before this may have been evicted or were never kept
+    private LocalDateTime coveredFrom;
+    private int segmentsScanned;
+    // skipped on their time range alone
+    private int segmentsSkipped;
+    private long millis;
+
+    @Builder.Default
+    private List<PairTotals> pairs = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class PairTotals {
+        private String pair;
+        private long deals;
+        private BigDecimal notional;
+        private BigDecimal minAmount;
+        private BigDecimal maxAmount;
+        private Double averageRate;
+    }
+}
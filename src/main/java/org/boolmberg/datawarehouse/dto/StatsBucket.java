@@ -0,0 +1,32 @@
+package org.boolmberg.datawarehouse.dto;
+
+import org.boolmberg.datawarehouse.exception.ValidationException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum StatsBucket {
+    HOUR("1h", ChronoUnit.HOURS),
+    DAY("1d", ChronoUnit.DAYS);
+
+    private final String code;
+    private final ChronoUnit unit;
+
+    StatsBucket(String code, ChronoUnit unit) {
+        this.code = code;
+        this.unit = unit;
+    }
+
+    public LocalDateTime truncate(LocalDateTime timestamp) {
+        return timestamp.truncatedTo(unit);
+    }
+
+    public static StatsBucket from(String bucket) {
+        for (StatsBucket value : values()) {
+            if (value.code.equalsIgnoreCase(bucket) || value.name().equalsIgnoreCase(bucket)) {
+                return value;
+            }
+        }
+        throw new ValidationException("Unsupported bucket: " + bucket + ", expected 1h or 1d");
+    }
+}
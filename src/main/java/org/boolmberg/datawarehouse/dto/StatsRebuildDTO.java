@@ -0,0 +1,20 @@
+package org.boolmberg.datawarehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StatsRebuildDTO {
+    // null when the range was unbounded on that side
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private int buckets;
+    private long millis;
+}
@@ -8,4 +8,8 @@ public class DuplicateDealException extends RuntimeException {
     public DuplicateDealException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    public static String alreadyExistsMessage(String dealId) {
+        return "Deal with ID '" + dealId + "' already exists";
+    }
 }
@@ -1,7 +1,8 @@
 package org.boolmberg.datawarehouse.exception;
 
 public class FxDealNotFoundException extends RuntimeException{
+    // a miss is an expected answer, not a failure worth a stack trace
     public FxDealNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
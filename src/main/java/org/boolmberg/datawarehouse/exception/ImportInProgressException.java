@@ -0,0 +1,7 @@
+package org.boolmberg.datawarehouse.exception;
+
+public class ImportInProgressException extends RuntimeException {
+    public ImportInProgressException(String message) {
+        super(message);
+    }
+}
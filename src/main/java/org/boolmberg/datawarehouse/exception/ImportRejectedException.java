@@ -0,0 +1,9 @@
+package org.boolmberg.datawarehouse.exception;
+
+import java.time.Duration;
+
+public class ImportRejectedException extends CapacityExceededException {
+    public ImportRejectedException(String message, Duration retryAfter) {
+        super(message, retryAfter);
+    }
+}
@@ -0,0 +1,121 @@
+package org.boolmberg.datawarehouse.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters of the import path. Everything is registered up front and stages are timed per chunk
+ * (per row only in ROW mode), so recording never looks up a meter on the hot path.
+ */
+@Component
+public class ImportMetrics {
+
+    public enum Stage {
+        // CSV records turned into deals
+        PARSE,
+        VALIDATE,
+        // existing deal id lookup of a chunk
+        DEDUP,
+        // batched JPA insert of a chunk
+        INSERT,
+        // COPY + INSERT ... SELECT of a chunk
+        COPY,
+        // one deal through the ROW path
+        ROW_IMPORT,
+        // one batch of import_errors rows
+        ERROR_WRITE
+    }
+
+    public enum DbCall {
+        LOOKUP,
+        INSERT_BATCH,
+        COPY,
+        ROW_IMPORT,
+        ERROR_BATCH
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<DbCall, Counter> dbCalls = new EnumMap<>(DbCall.class);
+    private final Counter importedRows;
+    private final Map<ImportErrorType, Counter> rejectedRows = new EnumMap<>(ImportErrorType.class);
+    private final Timer importDuration;
+    private final AtomicInteger importsInFlight = new AtomicInteger();
+
+    public ImportMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("fx.import.stage")
+                    .description("Time spent per import stage, per chunk")
+                    .tag("stage", name(stage))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (DbCall call : DbCall.values()) {
+            dbCalls.put(call, Counter.builder("fx.import.db.calls")
+                    .description("Database round trips made by imports")
+                    .tag("call", name(call))
+                    .register(registry));
+        }
+        importedRows = rowCounter("success");
+        for (ImportErrorType type : ImportErrorType.values()) {
+            rejectedRows.put(type, rowCounter(name(type)));
+        }
+        importDuration = Timer.builder("fx.import.duration")
+                .description("Wall time of a whole import")
+                .register(registry);
+        Gauge.builder("fx.import.in.flight", importsInFlight, AtomicInteger::get)
+                .description("Imports currently running")
+                .register(registry);
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void dbCall(DbCall call) {
+        dbCalls.get(call).increment();
+    }
+
+    // type is null for an imported row
+    public void row(ImportErrorType type) {
+        (type == null ? importedRows : rejectedRows.get(type)).increment();
+    }
+
+    public void importStarted() {
+        importsInFlight.incrementAndGet();
+    }
+
+    public void importFinished(long nanos) {
+        importsInFlight.decrementAndGet();
+        importDuration.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void errorQueue(Collection<?> queue) {
+        Gauge.builder("fx.import.errors.queued", queue, Collection::size)
+                .description("Import errors waiting to be written")
+                .register(registry);
+    }
+
+    private Counter rowCounter(String outcome) {
+        return Counter.builder("fx.import.rows")
+                .description("Rows processed by imports, by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
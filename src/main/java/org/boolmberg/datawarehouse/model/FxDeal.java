@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -26,7 +27,8 @@ import java.time.LocalDateTime;
 public class FxDeal {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "fx_deals_seq")
+    @SequenceGenerator(name = "fx_deals_seq", sequenceName = "fx_deals_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "deal_id", nullable = false, unique = true)
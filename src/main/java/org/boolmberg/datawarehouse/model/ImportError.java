@@ -29,6 +29,9 @@ public class ImportError {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Column(name = "import_id", length = 36)
+    private String importId;
+
     @Column(name = "row_number")
     private Integer rowNumber;
 
@@ -0,0 +1,8 @@
+package org.boolmberg.datawarehouse.model;
+
+public enum ImportJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,95 @@
+package org.boolmberg.datawarehouse.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.boolmberg.datawarehouse.config.DealCacheProperties;
+import org.boolmberg.datawarehouse.dto.CacheStatsDTO;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Size-bounded read-through cache of deals by dealId (W-TinyLFU eviction). Deals never change
+ * after import, so found entries only leave on eviction; unknown ids are cached as empty for
+ * a short while and replaced as soon as the deal is imported here. With a maximum size of 0
+ * every read goes to the loader.
+ */
+@Component
+public class DealCache {
+
+    // null when the cache is disabled
+    private final Cache<String, Optional<FxDealDTO>> cache;
+
+    public DealCache(DealCacheProperties properties) {
+        if (properties.getMaximumSize() == 0) {
+            this.cache = null;
+            return;
+        }
+        long negativeTtlNanos = properties.getNegativeTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<String, Optional<FxDealDTO>>() {
+                    @Override
+                    public long expireAfterCreate(String dealId, Optional<FxDealDTO> deal, long currentTime) {
+                        return deal.isPresent() ? Long.MAX_VALUE : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String dealId, Optional<FxDealDTO> deal, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(dealId, deal, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String dealId, Optional<FxDealDTO> deal, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    // null when the deal does not exist; the loader runs at most once per id at a time
+    public FxDealDTO get(String dealId, Function<String, FxDealDTO> loader) {
+        if (cache == null) {
+            return loader.apply(dealId);
+        }
+        return cache.get(dealId, id -> Optional.ofNullable(loader.apply(id))).orElse(null);
+    }
+
+    // called once the deal is committed; stores a copy shaped like a row read back from fx_deals
+    public void put(FxDealDTO deal) {
+        if (cache == null) {
+            return;
+        }
+        FxDealDTO stored = FxDealDTO.builder()
+                .dealId(deal.getDealId())
+                .currencyFrom(deal.getCurrencyFrom())
+                .currencyTo(deal.getCurrencyTo())
+                .dealTimestamp(deal.getDealTimestamp())
+                .dealAmount(deal.getDealAmount().setScale(4))
+                .exchangeRate(deal.getExchangeRate())
+                .build();
+        cache.put(stored.getDealId(), Optional.of(stored));
+    }
+
+    public CacheStatsDTO stats() {
+        if (cache == null) {
+            return CacheStatsDTO.builder().build();
+        }
+        CacheStats stats = cache.stats();
+        return CacheStatsDTO.builder()
+                .size(cache.estimatedSize())
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .averageLoadMillis(stats.averageLoadPenalty() / 1_000_000)
+                .build();
+    }
+}
@@ -0,0 +1,47 @@
+package org.boolmberg.datawarehouse.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks on deal ids. Imports in this JVM that carry the same deal id take turns from
+ * their insert until their transaction ends, so the one that comes second sees the committed
+ * row even where MERGE is not atomic under concurrency (H2). Different ids rarely share a stripe.
+ */
+@Component
+public class DealIdLocks {
+
+    private static final int STRIPES = 256;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public DealIdLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // released when the current transaction commits or rolls back
+    public void lockUntilCompletion(String dealId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("A deal id lock is held until its transaction ends, none is active");
+        }
+        ReentrantLock lock = stripe(dealId);
+        lock.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    private ReentrantLock stripe(String dealId) {
+        int hash = dealId.hashCode();
+        // as HashMap does, so hashes that only differ in their high bits still spread
+        return locks[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+}
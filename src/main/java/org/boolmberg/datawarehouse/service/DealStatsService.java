@@ -0,0 +1,322 @@
+package org.boolmberg.datawarehouse.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.DealStatsProperties;
+import org.boolmberg.datawarehouse.dto.DealStatsDTO;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.StatsBucket;
+import org.boolmberg.datawarehouse.dto.StatsRebuildDTO;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Deal count, notional and amount-weighted rate per currency pair and hour, kept in
+ * fx_deal_hourly_stats. Importing transactions add their deltas before they commit, so the
+ * rollup always matches fx_deals; day buckets are folded from the hours. The most recent
+ * hours are mirrored in memory and updated once the importing transaction has committed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DealStatsService {
+
+    private static final String COLUMNS = "currency_from, currency_to, bucket_start, deal_count, notional, rate_notional";
+
+    // a concurrent first insert of the same bucket is safe with ON CONFLICT but not with MERGE
+    private static final String UPSERT_SQL = "INSERT INTO fx_deal_hourly_stats AS s (" + COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (currency_from, currency_to, bucket_start) DO UPDATE SET "
+            + "deal_count = s.deal_count + EXCLUDED.deal_count, "
+            + "notional = s.notional + EXCLUDED.notional, "
+            + "rate_notional = s.rate_notional + EXCLUDED.rate_notional";
+
+    private static final String MERGE_SQL = """
+            MERGE INTO fx_deal_hourly_stats s
+            USING (VALUES (CAST(? AS VARCHAR(3)), CAST(? AS VARCHAR(3)), CAST(? AS TIMESTAMP), CAST(? AS BIGINT),
+                           CAST(? AS DECIMAL(38,4)), CAST(? AS DOUBLE PRECISION)))
+                AS d (currency_from, currency_to, bucket_start, deal_count, notional, rate_notional)
+            ON s.currency_from = d.currency_from AND s.currency_to = d.currency_to AND s.bucket_start = d.bucket_start
+            WHEN MATCHED THEN UPDATE SET deal_count = s.deal_count + d.deal_count,
+                notional = s.notional + d.notional, rate_notional = s.rate_notional + d.rate_notional
+            WHEN NOT MATCHED THEN INSERT (currency_from, currency_to, bucket_start, deal_count, notional, rate_notional)
+                VALUES (d.currency_from, d.currency_to, d.bucket_start, d.deal_count, d.notional, d.rate_notional)
+            """;
+
+    private static final String SELECT_SQL = "SELECT " + COLUMNS + " FROM fx_deal_hourly_stats";
+
+    private static final String REBUILD_SQL = "INSERT INTO fx_deal_hourly_stats (" + COLUMNS + ") "
+            + "SELECT currency_from, currency_to, DATE_TRUNC('hour', deal_timestamp), COUNT(*), SUM(deal_amount), "
+            + "SUM(deal_amount * exchange_rate) FROM fx_deals";
+
+    private static final String REBUILD_GROUP_BY = " GROUP BY currency_from, currency_to, DATE_TRUNC('hour', deal_timestamp)";
+
+    // holds back importing transactions until the rebuilt range is committed
+    private static final String LOCK_SQL = "LOCK TABLE fx_deal_hourly_stats IN EXCLUSIVE MODE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DealStatsProperties properties;
+
+    private final Object windowLock = new Object();
+    private NavigableMap<Key, Totals> window = new TreeMap<>();
+    private LocalDateTime windowStart = LocalDateTime.MAX;
+    // bumped by every reload; deltas recorded before it are already part of the reloaded window
+    private long epoch;
+    private volatile Boolean postgres;
+
+    @PostConstruct
+    void load() {
+        reloadWindow();
+    }
+
+    // must run in the transaction that inserted the deals
+    public void record(Collection<FxDealDTO> deals) {
+        if (deals.isEmpty()) {
+            return;
+        }
+        NavigableMap<Key, Totals> deltas = new TreeMap<>();
+        for (FxDealDTO deal : deals) {
+            Key key = new Key(StatsBucket.HOUR.truncate(deal.getDealTimestamp()),
+                    deal.getCurrencyFrom(), deal.getCurrencyTo());
+            // same scale as the notional column, so memory and table answer identically
+            deltas.computeIfAbsent(key, k -> new Totals())
+                    .addDeal(deal.getDealAmount().setScale(4, RoundingMode.HALF_UP), deal.getExchangeRate());
+        }
+
+        // sorted, so concurrent imports lock the rollup rows they share in the same order
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((key, totals) -> args.add(new Object[]{key.currencyFrom(), key.currencyTo(),
+                key.bucketStart(), totals.dealCount, totals.notional, totals.rateNotional}));
+        jdbcTemplate.batchUpdate(isPostgres() ? UPSERT_SQL : MERGE_SQL, args);
+
+        long recordedEpoch;
+        synchronized (windowLock) {
+            recordedEpoch = epoch;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(deltas, recordedEpoch);
+                }
+            });
+        } else {
+            apply(deltas, recordedEpoch);
+        }
+    }
+
+    // buckets starting in [from, to); the pair may be null for all pairs, either bound for no bound
+    public List<DealStatsDTO> find(String currencyFrom, String currencyTo, StatsBucket bucket,
+                                   LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from == null ? null : bucket.truncate(from);
+        List<Map.Entry<Key, Totals>> hours = null;
+        synchronized (windowLock) {
+            prune();
+            if (start != null && !start.isBefore(windowStart)) {
+                hours = new ArrayList<>();
+                for (Map.Entry<Key, Totals> entry : window.tailMap(new Key(start, "", ""), true).entrySet()) {
+                    Key key = entry.getKey();
+                    if (to != null && !key.bucketStart().isBefore(to)) {
+                        break;
+                    }
+                    if (currencyFrom == null || key.isPair(currencyFrom, currencyTo)) {
+                        hours.add(Map.entry(key, entry.getValue().copy()));
+                    }
+                }
+            }
+        }
+        if (hours == null) {
+            hours = select(currencyFrom, currencyTo, start, to);
+        }
+
+        NavigableMap<Key, Totals> buckets = new TreeMap<>();
+        for (Map.Entry<Key, Totals> hour : hours) {
+            Key key = hour.getKey();
+            buckets.computeIfAbsent(new Key(bucket.truncate(key.bucketStart()), key.currencyFrom(), key.currencyTo()),
+                    k -> new Totals()).add(hour.getValue());
+        }
+        List<DealStatsDTO> stats = new ArrayList<>(buckets.size());
+        buckets.forEach((key, totals) -> stats.add(DealStatsDTO.builder()
+                .currencyFrom(key.currencyFrom())
+                .currencyTo(key.currencyTo())
+                .bucketStart(key.bucketStart())
+                .dealCount(totals.dealCount)
+                .notional(totals.notional)
+                .averageRate(totals.notional.signum() == 0 ? null : totals.rateNotional / totals.notional.doubleValue())
+                .build()));
+        return stats;
+    }
+
+    // recomputes the hours touching [from, to) from fx_deals, e.g. after a backfill
+    @Transactional
+    public StatsRebuildDTO rebuild(LocalDateTime from, LocalDateTime to) {
+        long started = System.nanoTime();
+        LocalDateTime start = from == null ? null : StatsBucket.HOUR.truncate(from);
+        LocalDateTime end = to == null ? null : StatsBucket.HOUR.truncate(to);
+        if (end != null && end.isBefore(to)) {
+            end = end.plusHours(1);
+        }
+        if (isPostgres()) {
+            jdbcTemplate.execute(LOCK_SQL);
+        }
+
+        List<Object> args = new ArrayList<>(2);
+        jdbcTemplate.update("DELETE FROM fx_deal_hourly_stats" + where("bucket_start", start, end, args),
+                args.toArray());
+        args.clear();
+        int buckets = jdbcTemplate.update(REBUILD_SQL + where("deal_timestamp", start, end, args) + REBUILD_GROUP_BY,
+                args.toArray());
+        // still inside the transaction and the table lock, see epoch
+        reloadWindow();
+
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        log.info("Rebuilt {} hourly stats buckets between {} and {} in {} ms", buckets, start, end, millis);
+        return StatsRebuildDTO.builder()
+                .from(start)
+                .to(end)
+                .buckets(buckets)
+                .millis(millis)
+                .build();
+    }
+
+    private void reloadWindow() {
+        LocalDateTime start = hotWindowStart();
+        NavigableMap<Key, Totals> loaded = new TreeMap<>();
+        for (Map.Entry<Key, Totals> hour : select(null, null, start, null)) {
+            loaded.put(hour.getKey(), hour.getValue());
+        }
+        synchronized (windowLock) {
+            window = loaded;
+            windowStart = start;
+            epoch++;
+        }
+        log.debug("Loaded {} hourly stats buckets since {}", loaded.size(), start);
+    }
+
+    private void apply(NavigableMap<Key, Totals> deltas, long recordedEpoch) {
+        synchronized (windowLock) {
+            if (recordedEpoch != epoch) {
+                return;
+            }
+            prune();
+            deltas.tailMap(new Key(windowStart, "", ""), true)
+                    .forEach((key, totals) -> window.computeIfAbsent(key, k -> new Totals()).add(totals));
+        }
+    }
+
+    // caller holds windowLock
+    private void prune() {
+        LocalDateTime start = hotWindowStart();
+        if (start.isAfter(windowStart)) {
+            window.headMap(new Key(start, "", ""), false).clear();
+            windowStart = start;
+        }
+    }
+
+    private LocalDateTime hotWindowStart() {
+        return StatsBucket.HOUR.truncate(LocalDateTime.now().minus(properties.getHotWindow()));
+    }
+
+    private List<Map.Entry<Key, Totals>> select(String currencyFrom, String currencyTo,
+                                                LocalDateTime start, LocalDateTime end) {
+        List<Object> args = new ArrayList<>(4);
+        String where = where("bucket_start", start, end, args);
+        if (currencyFrom != null) {
+            where += (where.isEmpty() ? " WHERE" : " AND") + " currency_from = ? AND currency_to = ?";
+            args.add(currencyFrom);
+            args.add(currencyTo);
+        }
+        return jdbcTemplate.query(SELECT_SQL + where + " ORDER BY bucket_start, currency_from, currency_to",
+                (rs, rowNum) -> Map.entry(
+                        new Key(rs.getObject("bucket_start", LocalDateTime.class),
+                                rs.getString("currency_from"), rs.getString("currency_to")),
+                        new Totals(rs.getLong("deal_count"), rs.getBigDecimal("notional"), rs.getDouble("rate_notional"))),
+                args.toArray());
+    }
+
+    private static String where(String column, LocalDateTime start, LocalDateTime end, List<Object> args) {
+        List<String> conditions = new ArrayList<>(2);
+        if (start != null) {
+            conditions.add(column + " >= ?");
+            args.add(start);
+        }
+        if (end != null) {
+            conditions.add(column + " < ?");
+            args.add(end);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                    "PostgreSQL".equals(con.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    // ordered by time first, so the window can be pruned and range-scanned by bucket
+    private record Key(LocalDateTime bucketStart, String currencyFrom, String currencyTo) implements Comparable<Key> {
+
+        private static final Comparator<Key> ORDER = Comparator.comparing(Key::bucketStart)
+                .thenComparing(Key::currencyFrom)
+                .thenComparing(Key::currencyTo);
+
+        boolean isPair(String from, String to) {
+            return currencyFrom.equals(from) && currencyTo.equals(to);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private static final class Totals {
+        private long dealCount;
+        private BigDecimal notional;
+        private double rateNotional;
+
+        Totals() {
+            this(0, BigDecimal.ZERO, 0);
+        }
+
+        Totals(long dealCount, BigDecimal notional, double rateNotional) {
+            this.dealCount = dealCount;
+            this.notional = notional;
+            this.rateNotional = rateNotional;
+        }
+
+        void addDeal(BigDecimal amount, double rate) {
+            dealCount++;
+            notional = notional.add(amount);
+            rateNotional += amount.doubleValue() * rate;
+        }
+
+        void add(Totals other) {
+            dealCount += other.dealCount;
+            notional = notional.add(other.notional);
+            rateNotional += other.rateNotional;
+        }
+
+        Totals copy() {
+            return new Totals(dealCount, notional, rateNotional);
+        }
+    }
+}
@@ -1,28 +1,193 @@
 package org.boolmberg.datawarehouse.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.boolmberg.datawarehouse.dao.ImportErrorTypeDao;
-import org.boolmberg.datawarehouse.model.ImportError;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.metrics.ImportMetrics;
 import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Error journal of bulk imports. Errors are queued and written by a single writer thread in
+ * JDBC batches; {@link #flush} waits until everything an import queued before it is in the
+ * database and fails if any of it was lost. A full queue blocks the importing thread, errors are
+ * never dropped; once the writer is gone queueing and flushing fail instead of waiting. Errors a
+ * chunk checkpoint covers skip the queue and commit with it.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ErrorService {
 
-    private final ImportErrorTypeDao importErrorTypeDao;
+    private static final String INSERT_SQL = "INSERT INTO import_errors "
+            + "(import_id, row_number, deal_id, error_message, error_type) VALUES (?, ?, ?, ?, ?)";
+
+    // how often a blocked caller checks that the writer is still there
+    private static final long WRITER_CHECK_MILLIS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImportProperties importProperties;
+    private final ImportMetrics importMetrics;
+
+    // imports whose errors could not be written, until their flush; writer thread only
+    private final Map<String, RuntimeException> failures = new HashMap<>();
+    private BlockingQueue<Entry> queue;
+    private Thread writer;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, importProperties.getErrors().getQueueCapacity()));
+        importMetrics.errorQueue(queue);
+        writer = Thread.ofPlatform().name("fx-import-errors").daemon().start(this::write);
+    }
 
-    public ImportError addImportError(Integer rowNumber, String dealId,
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (!writer.isAlive()) {
+            return;
+        }
+        // whatever is still queued gets written before the writer exits
+        queue.put(Entry.STOP);
+        writer.join();
+    }
+
+    public void addImportError(String importId, Integer rowNumber, String dealId,
                                String message, ImportErrorType type) {
-        ImportError error = ImportError.builder()
-                .rowNumber(rowNumber)
-                .errorMessage(message)
-                .errorType(type)
-                .dealId(dealId)
-                .build();
-
-       return importErrorTypeDao.save(error);
+        // error_message is NOT NULL, one null would fail the whole batch it is written with
+        String text = message != null ? message : type.name();
+        put(new Entry(new Object[]{importId, rowNumber, dealId, text, type.name()}, importId, null));
+    }
+
+    // writes right away in the caller's transaction, for errors that must commit with a checkpoint
+    public void writeImportErrors(String importId, List<ImportSummary.ImportErrorDto> errors) {
+        if (errors.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(errors.size());
+        for (ImportSummary.ImportErrorDto error : errors) {
+            String text = error.getErrorMessage() != null ? error.getErrorMessage() : error.getErrorType();
+            rows.add(new Object[]{importId, error.getRowNumber(), error.getDealId(), text, error.getErrorType()});
+        }
+        long started = System.nanoTime();
+        importMetrics.dbCall(ImportMetrics.DbCall.ERROR_BATCH);
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        importMetrics.recordStage(ImportMetrics.Stage.ERROR_WRITE, System.nanoTime() - started);
+    }
+
+    // waits for the errors of the import, throws if any of them were not written
+    public void flush(String importId) {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        put(new Entry(null, importId, flushed));
+        try {
+            while (true) {
+                try {
+                    flushed.get(WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    if (!writer.isAlive() && !flushed.isDone()) {
+                        throw writerGone();
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Couldn't write import errors of " + importId, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while flushing import errors of " + importId, e);
+        }
+    }
+
+    private void put(Entry entry) {
+        try {
+            do {
+                if (!writer.isAlive()) {
+                    throw writerGone();
+                }
+            } while (!queue.offer(entry, WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing an import error", e);
+        }
+    }
+
+    private static IllegalStateException writerGone() {
+        return new IllegalStateException("The import error writer has stopped, errors can't be written");
+    }
+
+    private void write() {
+        int batchSize = Math.max(1, importProperties.getErrors().getBatchSize());
+        List<Entry> drained = new ArrayList<>(batchSize);
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                drained.add(queue.take());
+            } catch (InterruptedException e) {
+                log.warn("Import error writer interrupted, {} errors not written", queue.size());
+                queue.drainTo(drained);
+                drained.stream()
+                        .filter(entry -> entry.flushed != null)
+                        .forEach(entry -> entry.flushed.completeExceptionally(writerGone()));
+                return;
+            }
+            queue.drainTo(drained, batchSize - 1);
+            for (Entry entry : drained) {
+                if (entry.row != null) {
+                    batch.add(entry.row);
+                    continue;
+                }
+                // flush and stop markers: everything queued before them goes out first
+                insert(batch);
+                if (entry == Entry.STOP) {
+                    return;
+                }
+                RuntimeException failure = failures.remove(entry.importId);
+                if (failure != null) {
+                    entry.flushed.completeExceptionally(failure);
+                } else {
+                    entry.flushed.complete(null);
+                }
+            }
+            drained.clear();
+            insert(batch);
+        }
+    }
+
+    // a failed batch is held against every import that had rows in it, until that import flushes
+    private void insert(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        importMetrics.dbCall(ImportMetrics.DbCall.ERROR_BATCH);
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+            importMetrics.recordStage(ImportMetrics.Stage.ERROR_WRITE, System.nanoTime() - started);
+        } catch (RuntimeException e) {
+            log.error("Couldn't write {} import errors", batch.size(), e);
+            for (Object[] row : batch) {
+                failures.putIfAbsent((String) row[0], e);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private record Entry(Object[] row, String importId, CompletableFuture<Void> flushed) {
+        private static final Entry STOP = new Entry(null, null, null);
     }
 }
@@ -0,0 +1,211 @@
+package org.boolmberg.datawarehouse.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.ChunkCheckpoint;
+import org.boolmberg.datawarehouse.dto.FileImport;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.exception.ImportInProgressException;
+import org.boolmberg.datawarehouse.model.ImportJobStatus;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Checkpoints of file imports in file_imports, one row per file checksum and zip entry. Every
+ * committed chunk advances its row in the chunk's own transaction, so the row always says which
+ * rows of the file are in fx_deals; uploading the same file again carries on after them. Once
+ * the import completes the row keeps the counts of its summary, which a repeat upload gets back;
+ * the errors themselves stay in import_errors under the importId.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileImportService {
+
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private static final String SELECT_SQL = "SELECT id, import_id, status, last_row, imported, duplicates, failed, "
+            + "updated_at, summary FROM file_imports WHERE checksum = ? AND entry_name = ? FOR UPDATE";
+
+    private static final String INSERT_SQL = "INSERT INTO file_imports (checksum, entry_name, file_name, import_id, "
+            + "status, last_row, imported, duplicates, failed, started_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, 0, 0, 0, 0, ?, ?)";
+
+    private static final String RESTART_SQL = "UPDATE file_imports SET file_name = ?, import_id = ?, status = ?, "
+            + "last_row = 0, imported = 0, duplicates = 0, failed = 0, summary = NULL, started_at = ?, updated_at = ? "
+            + "WHERE id = ?";
+
+    private static final String RESUME_SQL = "UPDATE file_imports SET file_name = ?, status = ?, updated_at = ? "
+            + "WHERE id = ?";
+
+    private static final String ADVANCE_SQL = "UPDATE file_imports SET last_row = ?, imported = imported + ?, "
+            + "duplicates = duplicates + ?, failed = failed + ?, updated_at = ? WHERE id = ?";
+
+    private static final String COMPLETE_SQL = "UPDATE file_imports SET status = ?, summary = ?, updated_at = ? "
+            + "WHERE id = ?";
+
+    private static final String FAIL_SQL = "UPDATE file_imports SET status = ?, updated_at = ? WHERE id = ?";
+
+    private static final String TOUCH_SQL = "UPDATE file_imports SET updated_at = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImportProperties importProperties;
+    private final ObjectMapper objectMapper;
+    private final ErrorService errorService;
+
+    // Starts a new import of the file, or resumes the last one when it failed or its node died.
+    // A file imported before comes back with its summary and nothing to do, unless forced.
+    // Throws ImportInProgressException while another import of the file is checkpointing.
+    @Transactional
+    public FileImport begin(String checksum, String entryName, String fileName, boolean force) {
+        String entry = truncate(entryName);
+        String name = truncate(fileName);
+        LocalDateTime now = LocalDateTime.now();
+        List<Row> rows = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new Row(
+                rs.getLong("id"),
+                rs.getString("import_id"),
+                ImportJobStatus.valueOf(rs.getString("status")),
+                rs.getInt("last_row"),
+                rs.getInt("imported"),
+                rs.getInt("duplicates"),
+                rs.getInt("failed"),
+                rs.getTimestamp("updated_at").toLocalDateTime(),
+                rs.getString("summary")), checksum, entry);
+
+        if (rows.isEmpty()) {
+            return insert(checksum, entry, name, now);
+        }
+        Row row = rows.get(0);
+        if (row.status == ImportJobStatus.RUNNING
+                && row.updatedAt.isAfter(now.minus(importProperties.getCheckpoints().getStaleAfter()))) {
+            throw new ImportInProgressException("An import of " + describe(name, entry) + " is already running as "
+                    + row.importId + ", retry once it has finished");
+        }
+        if (row.status == ImportJobStatus.COMPLETED && !force && row.summary != null) {
+            log.info("{} was imported before as {}, returning its summary", describe(name, entry), row.importId);
+            ImportSummary summary = readSummary(row.summary);
+            summary.setAlreadyImported(true);
+            return FileImport.builder().id(row.id).importId(row.importId).summary(summary).build();
+        }
+        if (row.status == ImportJobStatus.COMPLETED) {
+            String importId = UUID.randomUUID().toString();
+            jdbcTemplate.update(RESTART_SQL, name, importId, ImportJobStatus.RUNNING.name(), now, now, row.id);
+            return FileImport.builder().id(row.id).importId(importId).build();
+        }
+
+        jdbcTemplate.update(RESUME_SQL, name, ImportJobStatus.RUNNING.name(), now, row.id);
+        log.info("Resuming import {} of {} after row {}", row.importId, describe(name, entry), row.lastRow);
+        return FileImport.builder()
+                .id(row.id)
+                .importId(row.importId)
+                .lastRow(row.lastRow)
+                .imported(row.imported)
+                .duplicates(row.duplicates)
+                .failed(row.failed)
+                .build();
+    }
+
+    // joins the transaction that commits the chunk, which also writes the errors the checkpoint carries
+    @Transactional
+    public void advance(ChunkCheckpoint checkpoint) {
+        errorService.writeImportErrors(checkpoint.getImportId(), checkpoint.getErrors());
+        jdbcTemplate.update(ADVANCE_SQL, checkpoint.getLastRow(), checkpoint.getImported(),
+                checkpoint.getDuplicates(), checkpoint.getFailed(), LocalDateTime.now(), checkpoint.getFileImportId());
+    }
+
+    // keeps a running import that has no rows of its own, e.g. a zip archive, from going stale
+    @Transactional
+    public void touch(long fileImportId) {
+        jdbcTemplate.update(TOUCH_SQL, LocalDateTime.now(), fileImportId);
+    }
+
+    @Transactional
+    public void complete(long fileImportId, ImportSummary summary) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(counts(summary));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Couldn't store the summary of import " + summary.getImportId(), e);
+        }
+        jdbcTemplate.update(COMPLETE_SQL, ImportJobStatus.COMPLETED.name(), json, LocalDateTime.now(), fileImportId);
+    }
+
+    @Transactional
+    public void fail(long fileImportId) {
+        jdbcTemplate.update(FAIL_SQL, ImportJobStatus.FAILED.name(), LocalDateTime.now(), fileImportId);
+    }
+
+    private FileImport insert(String checksum, String entry, String name, LocalDateTime now) {
+        String importId = UUID.randomUUID().toString();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(con -> {
+                PreparedStatement statement = con.prepareStatement(INSERT_SQL, new String[]{"id"});
+                statement.setString(1, checksum);
+                statement.setString(2, entry);
+                statement.setString(3, name);
+                statement.setString(4, importId);
+                statement.setString(5, ImportJobStatus.RUNNING.name());
+                statement.setObject(6, now);
+                statement.setObject(7, now);
+                return statement;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            // the same file was submitted twice at once
+            throw new ImportInProgressException("An import of " + describe(name, entry) + " is already running, "
+                    + "retry once it has finished");
+        }
+        return FileImport.builder().id(keyHolder.getKey().longValue()).importId(importId).build();
+    }
+
+    // file_imports.summary is read back whole by every repeat upload, the errors would grow it with the file
+    private static ImportSummary counts(ImportSummary summary) {
+        return ImportSummary.builder()
+                .importId(summary.getImportId())
+                .totalRecords(summary.getTotalRecords())
+                .successfulImports(summary.getSuccessfulImports())
+                .failedImports(summary.getFailedImports())
+                .duplicateImports(summary.getDuplicateImports())
+                .fileName(summary.getFileName())
+                .entries(summary.getEntries() == null ? null
+                        : summary.getEntries().stream().map(FileImportService::counts).toList())
+                .resumedAfterRow(summary.getResumedAfterRow())
+                .build();
+    }
+
+    private ImportSummary readSummary(String json) {
+        try {
+            return objectMapper.readValue(json, ImportSummary.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored import summary is unreadable", e);
+        }
+    }
+
+    private static String describe(String fileName, String entry) {
+        String name = fileName == null ? "this file" : fileName;
+        return entry.isEmpty() || entry.equals(fileName) ? name : name + " (" + entry + ")";
+    }
+
+    private static String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() <= MAX_NAME_LENGTH ? value : value.substring(0, MAX_NAME_LENGTH);
+    }
+
+    private record Row(long id, String importId, ImportJobStatus status, int lastRow, int imported, int duplicates,
+                       int failed, LocalDateTime updatedAt, String summary) {
+    }
+}
@@ -0,0 +1,168 @@
+package org.boolmberg.datawarehouse.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.dto.ChunkCheckpoint;
+import org.boolmberg.datawarehouse.dto.DealRow;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.exception.DuplicateDealException;
+import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.postgresql.core.BaseConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * PostgreSQL-only ingest engine: a chunk is streamed with COPY into the unlogged
+ * fx_deals_staging table and moved into fx_deals with a single INSERT ... SELECT. Rows whose
+ * deal_id is already taken are skipped by the fx_deal_keys trigger of the partitioned table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FxDealCopyService {
+
+    private static final String COPY_SQL = "COPY fx_deals_staging (chunk_id, row_number, deal_id, currency_from, "
+            + "currency_to, deal_timestamp, deal_amount, exchange_rate) FROM STDIN WITH (FORMAT csv)";
+
+    // fx_deals_seq steps by 50 and each value stands for the 50 ids up to it, as for FxDeal's
+    // pooled generator: the chunk draws one value per 50 rows and numbers its rows within them
+    private static final String MERGE_SQL = """
+            WITH staged AS (
+                SELECT deal_id, currency_from, currency_to, deal_timestamp, deal_amount, exchange_rate,
+                       row_number() OVER (ORDER BY row_number) - 1 AS position
+                FROM fx_deals_staging
+                WHERE chunk_id = ?
+            ), blocks AS (
+                SELECT block, nextval('fx_deals_seq') AS last_id
+                FROM generate_series(0, (SELECT (count(*) - 1) / 50 FROM staged)) AS block
+            )
+            INSERT INTO fx_deals (id, deal_id, currency_from, currency_to, deal_timestamp, deal_amount, exchange_rate)
+            SELECT blocks.last_id - 49 + mod(staged.position, 50), staged.deal_id, staged.currency_from,
+                   staged.currency_to, staged.deal_timestamp, staged.deal_amount, staged.exchange_rate
+            FROM staged
+            JOIN blocks ON blocks.block = staged.position / 50
+            ORDER BY staged.position
+            RETURNING deal_id
+            """;
+
+    // makes the fx_deal_keys trigger drop duplicates instead of failing the statement
+    private static final String SKIP_DUPLICATES_SQL = "SET LOCAL fx_deals.on_duplicate = 'skip'";
+
+    private static final String CLEAR_SQL = "DELETE FROM fx_deals_staging WHERE chunk_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DealStatsService dealStatsService;
+    private final RecentDealStore recentDealStore;
+    private final FileImportService fileImportService;
+
+    private volatile Boolean supported;
+
+    public boolean isSupported() {
+        if (supported == null) {
+            supported = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> con.isWrapperFor(BaseConnection.class));
+            if (!supported) {
+                log.info("COPY ingest needs PostgreSQL, falling back to batched JPA inserts");
+            }
+        }
+        return supported;
+    }
+
+    // returns the deal ids that were inserted; every other row hit an existing deal
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Set<String> copyDeals(List<DealRow> rows) {
+        UUID chunkId = UUID.randomUUID();
+        jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            CopyManager copyManager = new CopyManager(con.unwrap(BaseConnection.class));
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new PGCopyOutputStream(copyManager.copyIn(COPY_SQL)), StandardCharsets.UTF_8), 1 << 16)) {
+                for (DealRow row : rows) {
+                    writeRow(writer, chunkId, row);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return (long) rows.size();
+        });
+
+        jdbcTemplate.execute(SKIP_DUPLICATES_SQL);
+        Set<String> inserted = new HashSet<>(jdbcTemplate.queryForList(MERGE_SQL, String.class, chunkId));
+        jdbcTemplate.update(CLEAR_SQL, chunkId);
+        List<FxDealDTO> deals = rows.stream()
+                .map(DealRow::getDeal)
+                .filter(deal -> inserted.contains(deal.getDealId()))
+                .toList();
+        dealStatsService.record(deals);
+        recentDealStore.record(deals);
+        return inserted;
+    }
+
+    // moves the checkpoint in the same transaction, rows that were not inserted are duplicates
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Set<String> copyDeals(List<DealRow> rows, ChunkCheckpoint checkpoint) {
+        Set<String> inserted = copyDeals(rows);
+        for (DealRow row : rows) {
+            String dealId = row.getDeal().getDealId();
+            if (!inserted.contains(dealId)) {
+                checkpoint.getErrors().add(ImportSummary.ImportErrorDto.builder()
+                        .rowNumber(row.getRowNumber())
+                        .dealId(dealId)
+                        .errorMessage(DuplicateDealException.alreadyExistsMessage(dealId))
+                        .errorType(ImportErrorType.DUPLICATE.name())
+                        .build());
+            }
+        }
+        checkpoint.setImported(inserted.size());
+        checkpoint.setDuplicates(checkpoint.getDuplicates() + rows.size() - inserted.size());
+        fileImportService.advance(checkpoint);
+        return inserted;
+    }
+
+    private void writeRow(Writer writer, UUID chunkId, DealRow row) throws IOException {
+        FxDealDTO deal = row.getDeal();
+        writer.write(chunkId.toString());
+        writer.write(',');
+        writer.write(Integer.toString(row.getRowNumber()));
+        writer.write(',');
+        writeQuoted(writer, deal.getDealId());
+        writer.write(',');
+        writer.write(deal.getCurrencyFrom());
+        writer.write(',');
+        writer.write(deal.getCurrencyTo());
+        writer.write(',');
+        writer.write(deal.getDealTimestamp().toString());
+        writer.write(',');
+        writer.write(deal.getDealAmount().toPlainString());
+        writer.write(',');
+        writer.write(Double.toString(deal.getExchangeRate()));
+        writer.write('\n');
+    }
+
+    private void writeQuoted(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,60 @@
+package org.boolmberg.datawarehouse.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.PartitionProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+
+/**
+ * Creates the monthly fx_deals partitions ahead of time on PostgreSQL, so new deals land in
+ * their own month instead of the default partition. Other databases keep a plain table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FxDealPartitionService {
+
+    private static final String ENSURE_PARTITION_SQL = "SELECT fx_deals_ensure_partition(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionProperties properties;
+
+    private volatile Boolean postgres;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${fx-deals.partitions.cron:0 0 3 * * *}")
+    public void createUpcomingPartitions() {
+        if (!isPostgres()) {
+            return;
+        }
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+        for (int i = 0; i <= properties.getMonthsAhead(); i++) {
+            try {
+                // null when the partition already exists
+                String created = jdbcTemplate.queryForObject(ENSURE_PARTITION_SQL, String.class, month.plusMonths(i));
+                if (created != null) {
+                    log.info("Created fx_deals partition {}", created);
+                }
+            } catch (DataAccessException e) {
+                // another instance may have created it first; the next run retries anyway
+                log.warn("Could not create the fx_deals partition for {}: {}", month.plusMonths(i), e.getMessage());
+            }
+        }
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                    "PostgreSQL".equals(con.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+}
@@ -3,49 +3,224 @@ package org.boolmberg.datawarehouse.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.boolmberg.datawarehouse.dao.FxDealDao;
+import org.boolmberg.datawarehouse.dao.FxDealSpecifications;
+import org.boolmberg.datawarehouse.dto.ChunkCheckpoint;
+import org.boolmberg.datawarehouse.dto.DealCursor;
 import org.boolmberg.datawarehouse.dto.FxDealDTO;
 import org.boolmberg.datawarehouse.exception.DuplicateDealException;
-import org.boolmberg.datawarehouse.exception.FxDealNotFoundException;
 import org.boolmberg.datawarehouse.model.FxDeal;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FxDealService {
 
+    // The partitioned table has no unique index on deal_id for ON CONFLICT to use: the
+    // fx_deal_keys trigger claims the id with ON CONFLICT DO NOTHING instead and, once the
+    // transaction asked it to skip, drops the row rather than raising. The row only exists once
+    // its WHERE has run, so the flag is set before the trigger reads it, in the same statement.
+    private static final String POSTGRES_INSERT_SQL = """
+            INSERT INTO fx_deals (id, deal_id, currency_from, currency_to, deal_timestamp, deal_amount, exchange_rate)
+            SELECT ?, ?, ?, ?, ?, ?, ?
+            WHERE set_config('fx_deals.on_duplicate', 'skip', true) = 'skip'
+            """;
+
+    private static final String MERGE_SQL = """
+            MERGE INTO fx_deals d
+            USING (VALUES (?, ?, ?, ?, ?, ?, ?))
+                n (id, deal_id, currency_from, currency_to, deal_timestamp, deal_amount, exchange_rate)
+            ON d.deal_id = n.deal_id
+            WHEN NOT MATCHED THEN INSERT (id, deal_id, currency_from, currency_to, deal_timestamp, deal_amount, exchange_rate)
+            VALUES (n.id, n.deal_id, n.currency_from, n.currency_to, n.deal_timestamp, n.deal_amount, n.exchange_rate)
+            """;
+
+    // fx_deals_seq steps by 50 and each value stands for the 50 ids up to it, as for FxDeal's pooled generator
+    private static final int ID_BLOCK = 50;
+
     private final FxDealDao fxDealDao;
+    private final DealStatsService dealStatsService;
+    private final RecentDealStore recentDealStore;
+    private final FileImportService fileImportService;
+    private final JdbcTemplate jdbcTemplate;
+    private final DealIdLocks dealIdLocks;
+
+    private final ReentrantLock idLock = new ReentrantLock();
+    private long nextId;
+    private long lastId = -1;
 
+    private volatile Boolean postgres;
 
+
+    // A single insert-if-absent statement. Imports of the same deal id in this JVM wait for each
+    // other's transaction, so the later one finds the deal and is reported as a duplicate.
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public FxDeal importDeal(FxDealDTO dto) {
-        FxDeal fxDeal = FxDeal.builder()
-                .dealId(dto.getDealId())
-                .currencyTo(dto.getCurrencyTo())
-                .currencyFrom(dto.getCurrencyFrom())
-                .dealAmount(dto.getDealAmount())
-                .dealTimestamp(dto.getDealTimestamp())
-                .exchangeRate(dto.getExchangeRate())
-                .build();
+        return insertDeal(dto);
+    }
 
-        if (fxDealDao.existsByDealId(dto.getDealId())) {
+    // for deals the caller has validated already, FxDealImportAspect only advises importDeal
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public FxDeal importValidatedDeal(FxDealDTO dto) {
+        return insertDeal(dto);
+    }
+
+    private FxDeal insertDeal(FxDealDTO dto) {
+        dealIdLocks.lockUntilCompletion(dto.getDealId());
+        FxDeal fxDeal = toEntity(dto);
+
+        Long id;
+        try {
+            id = insertIfAbsent(dto);
+        } catch (DuplicateKeyException e) {
+            // committed by another node in between
+            id = null;
+        }
+        if (id == null) {
             log.warn("Duplicate deal detected: {}", dto.getDealId());
-            throw new DuplicateDealException("Deal with ID '" + dto.getDealId() + "' already exists");
+            throw new DuplicateDealException(DuplicateDealException.alreadyExistsMessage(dto.getDealId()));
+        }
+
+        fxDeal.setId(id);
+        dealStatsService.record(List.of(dto));
+        recentDealStore.record(List.of(dto));
+        return fxDeal;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<FxDeal> importDeals(List<FxDealDTO> dtos) {
+        List<FxDeal> fxDeals = dtos.stream().map(this::toEntity).toList();
+        List<FxDeal> saved = fxDealDao.saveAll(fxDeals);
+        fxDealDao.flush();
+        dealStatsService.record(dtos);
+        recentDealStore.record(dtos);
+        return saved;
+    }
+
+    // the deals and the checkpoint that covers them commit together
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<FxDeal> importDeals(List<FxDealDTO> dtos, ChunkCheckpoint checkpoint) {
+        List<FxDeal> saved = importDeals(dtos);
+        checkpoint.setImported(dtos.size());
+        fileImportService.advance(checkpoint);
+        return saved;
+    }
+
+    public Set<String> findExistingDealIds(Collection<String> dealIds) {
+        return new HashSet<>(fxDealDao.findExistingDealIds(dealIds));
+    }
+
+    public Optional<FxDeal> findByDealId(String dealId) {
+        return fxDealDao.findByDealId(dealId);
+    }
+
+    // one keyset page; every argument but limit may be null
+    @Transactional(readOnly = true)
+    public List<FxDeal> findDeals(String currencyFrom, String currencyTo, LocalDateTime from, LocalDateTime to,
+                                  DealCursor after, int limit) {
+        List<Specification<FxDeal>> filters = new ArrayList<>(3);
+        if (currencyFrom != null) {
+            filters.add(FxDealSpecifications.currencyPair(currencyFrom, currencyTo));
+        }
+        if (from != null || to != null) {
+            filters.add(FxDealSpecifications.dealTimestampBetween(from, to));
+        }
+        if (after != null) {
+            filters.add(FxDealSpecifications.after(after));
+        }
+        return fxDealDao.findBy(Specification.allOf(filters), query -> query
+                .sortBy(FxDealSpecifications.KEYSET_ORDER)
+                .limit(limit)
+                .all());
+    }
+
+    // the cursor only lives as long as the transaction, so rows are pushed to the sink
+    @Transactional(readOnly = true)
+    public long exportDeals(Consumer<FxDealDTO> sink) {
+        long exported = 0;
+        try (Stream<FxDealDTO> deals = fxDealDao.streamAllDeals()) {
+            Iterator<FxDealDTO> iterator = deals.iterator();
+            while (iterator.hasNext()) {
+                sink.accept(iterator.next());
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    // returns the new id, null when the deal id is taken
+    private Long insertIfAbsent(FxDealDTO dto) {
+        long id = nextId();
+        Object[] values = {id, dto.getDealId(), dto.getCurrencyFrom(), dto.getCurrencyTo(), dto.getDealTimestamp(),
+                dto.getDealAmount(), dto.getExchangeRate()};
+        int inserted;
+        if (isPostgres()) {
+            inserted = jdbcTemplate.update(POSTGRES_INSERT_SQL, values);
+        } else {
+            inserted = jdbcTemplate.update(MERGE_SQL, values);
         }
+        return inserted == 0 ? null : id;
+    }
 
-        return fxDealDao.save(fxDeal);
+    // one sequence call per block of ids instead of one per deal
+    private long nextId() {
+        idLock.lock();
+        try {
+            if (nextId > lastId) {
+                lastId = nextSequenceValue();
+                nextId = lastId - ID_BLOCK + 1;
+                if (nextId < 1) {
+                    // the first value of a fresh sequence, as Hibernate's pooled optimizer does it
+                    // is the bottom of a block whose top is the next value
+                    nextId = lastId;
+                    lastId = nextSequenceValue();
+                }
+            }
+            return nextId++;
+        } finally {
+            idLock.unlock();
+        }
     }
 
-    public FxDeal getByDealId(String dealId) {
-        return fxDealDao.findByDealId(dealId)
-                .orElseThrow(() -> new FxDealNotFoundException("Couldn't find deal with dealId: " + dealId));
+    private long nextSequenceValue() {
+        return jdbcTemplate.queryForObject(isPostgres()
+                ? "SELECT nextval('fx_deals_seq')" : "SELECT NEXT VALUE FOR fx_deals_seq", Long.class);
     }
 
-    public List<FxDeal> findAllDeals() {
-        return fxDealDao.findAll();
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                    "PostgreSQL".equals(con.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    private FxDeal toEntity(FxDealDTO dto) {
+        return FxDeal.builder()
+                .dealId(dto.getDealId())
+                .currencyTo(dto.getCurrencyTo())
+                .currencyFrom(dto.getCurrencyFrom())
+                .dealAmount(dto.getDealAmount())
+                .dealTimestamp(dto.getDealTimestamp())
+                .exchangeRate(dto.getExchangeRate())
+                .build();
     }
 }
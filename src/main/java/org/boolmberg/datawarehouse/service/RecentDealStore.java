@@ -0,0 +1,392 @@
+package org.boolmberg.datawarehouse.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.boolmberg.datawarehouse.config.RecentDealStoreProperties;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.RecentScanDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Column copy of the deals of the last few days for ad hoc scans that the hourly rollup can't
+ * answer, e.g. amount bands. Deals are appended to fixed-size segments of primitive arrays:
+ * timestamp millis, dictionary-coded pair, amount as a long of 1/10000 units and rate, about 26
+ * bytes per deal. Scans run over the segments in parallel and skip those outside the time range;
+ * segments go once all their deals are past the retention, or oldest first beyond the memory budget.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecentDealStore {
+
+    static final int BYTES_PER_DEAL = Long.BYTES + Short.BYTES + Long.BYTES + Double.BYTES;
+    private static final int AMOUNT_SCALE = 4;
+
+    private static final String LOAD_SQL = "SELECT currency_from, currency_to, deal_timestamp, deal_amount, "
+            + "exchange_rate FROM fx_deals WHERE deal_timestamp >= ? ORDER BY deal_timestamp";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RecentDealStoreProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    // oldest first, only the last one takes new deals
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Short> pairCodes = new ConcurrentHashMap<>();
+    private final List<String> pairs = new CopyOnWriteArrayList<>();
+    // newest deal dropped to stay within the memory budget
+    private volatile long evictedThrough = Long.MIN_VALUE;
+
+    @PostConstruct
+    void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Gauge.builder("fx.recent.store.deals", this, RecentDealStore::size)
+                .description("Deals held by the recent deal store")
+                .register(meterRegistry);
+        Gauge.builder("fx.recent.store.bytes", this, RecentDealStore::allocatedBytes)
+                .description("Memory allocated by the recent deal store segments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        long started = System.nanoTime();
+        LocalDateTime since = LocalDateTime.now().minus(properties.getRetention());
+        List<FxDealDTO> batch = new ArrayList<>(properties.getSegmentSize());
+        jdbcTemplate.query(con -> {
+            var statement = con.prepareStatement(LOAD_SQL);
+            statement.setFetchSize(10_000);
+            statement.setObject(1, since);
+            return statement;
+        }, rs -> {
+            batch.add(FxDealDTO.builder()
+                    .currencyFrom(rs.getString("currency_from"))
+                    .currencyTo(rs.getString("currency_to"))
+                    .dealTimestamp(rs.getObject("deal_timestamp", LocalDateTime.class))
+                    .dealAmount(rs.getBigDecimal("deal_amount"))
+                    .exchangeRate(rs.getDouble("exchange_rate"))
+                    .build());
+            if (batch.size() == properties.getSegmentSize()) {
+                add(batch);
+                batch.clear();
+            }
+        });
+        add(batch);
+        log.info("Loaded {} deals since {} into the recent deal store in {} ms", size(), since,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    // call in the transaction that inserted the deals, they are added once it has committed
+    public void record(Collection<FxDealDTO> deals) {
+        if (!properties.isEnabled() || deals.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<FxDealDTO> committed = List.copyOf(deals);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(committed);
+                }
+            });
+        } else {
+            add(deals);
+        }
+    }
+
+    synchronized void add(Collection<FxDealDTO> deals) {
+        long cutoff = cutoff();
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        int skipped = 0;
+        for (FxDealDTO deal : deals) {
+            long timestamp = toMillis(deal.getDealTimestamp());
+            if (timestamp < cutoff) {
+                continue;
+            }
+            BigInteger units = deal.getDealAmount().setScale(AMOUNT_SCALE, RoundingMode.HALF_UP).unscaledValue();
+            if (units.bitLength() >= Long.SIZE) {
+                skipped++;
+                continue;
+            }
+            if (segment == null || segment.isFull()) {
+                segment = new Segment(properties.getSegmentSize());
+                segments.add(segment);
+            }
+            segment.append(timestamp, pairCode(deal.getCurrencyFrom() + deal.getCurrencyTo()),
+                    units.longValue(), deal.getExchangeRate());
+        }
+        if (skipped > 0) {
+            log.warn("{} deals with amounts too large for the recent deal store were not added", skipped);
+        }
+        evict();
+    }
+
+    // deals in [from, to) of the pair with amounts in [minAmount, maxAmount]; any filter may be null
+    public RecentScanDTO scan(String pair, BigDecimal minAmount, BigDecimal maxAmount,
+                              LocalDateTime from, LocalDateTime to) {
+        long started = System.nanoTime();
+        synchronized (this) {
+            evict();
+        }
+        long coveredFrom = Math.max(cutoff(), evictedThrough + 1);
+        Filter filter = new Filter(
+                pair == null ? -1 : pairCodes.getOrDefault(pair, (short) -2),
+                minAmount == null ? Long.MIN_VALUE : toUnits(minAmount, RoundingMode.CEILING),
+                maxAmount == null ? Long.MAX_VALUE : toUnits(maxAmount, RoundingMode.FLOOR),
+                from == null ? coveredFrom : Math.max(coveredFrom, toMillis(from)),
+                to == null ? Long.MAX_VALUE : toMillis(to));
+
+        Partial result = filter.pairCode() == -2
+                ? new Partial()
+                : segments.parallelStream()
+                        .map(segment -> segment.scan(filter))
+                        .reduce(new Partial(), Partial::merge);
+
+        List<RecentScanDTO.PairTotals> pairTotals = new ArrayList<>();
+        Totals total = new Totals();
+        for (int code = 0; code < result.totals.length; code++) {
+            Totals totals = result.totals[code];
+            if (totals != null && totals.deals > 0) {
+                total.merge(totals);
+                pairTotals.add(RecentScanDTO.PairTotals.builder()
+                        .pair(pairs.get(code))
+                        .deals(totals.deals)
+                        .notional(totals.notional())
+                        .minAmount(fromUnits(totals.min))
+                        .maxAmount(fromUnits(totals.max))
+                        .averageRate(totals.averageRate())
+                        .build());
+            }
+        }
+        return RecentScanDTO.builder()
+                .deals(total.deals)
+                .notional(total.notional())
+                .minAmount(total.deals == 0 ? null : fromUnits(total.min))
+                .maxAmount(total.deals == 0 ? null : fromUnits(total.max))
+                .averageRate(total.averageRate())
+                .coveredFrom(LocalDateTime.ofEpochSecond(Math.floorDiv(coveredFrom, 1000),
+                        (int) Math.floorMod(coveredFrom, 1000) * 1_000_000, ZoneOffset.UTC))
+                .segmentsScanned(result.scanned)
+                .segmentsSkipped(result.skipped)
+                .millis((System.nanoTime() - started) / 1_000_000)
+                .pairs(pairTotals)
+                .build();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public long allocatedBytes() {
+        return (long) segments.size() * properties.getSegmentSize() * BYTES_PER_DEAL;
+    }
+
+    // caller holds the store lock
+    private void evict() {
+        long cutoff = cutoff();
+        segments.removeIf(segment -> segment.size > 0 && segment.maxTimestamp < cutoff);
+        long budget = properties.getMemoryBudget().toBytes();
+        // the segment taking new deals always stays
+        while (segments.size() > 1 && allocatedBytes() > budget) {
+            Segment oldest = segments.remove(0);
+            evictedThrough = Math.max(evictedThrough, oldest.maxTimestamp);
+            log.debug("Evicted {} deals up to {} ms from the recent deal store", oldest.size, oldest.maxTimestamp);
+        }
+    }
+
+    private short pairCode(String pair) {
+        Short code = pairCodes.get(pair);
+        if (code == null) {
+            if (pairs.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many currency pairs for the recent deal store");
+            }
+            code = (short) pairs.size();
+            pairs.add(pair);
+            pairCodes.put(pair, code);
+        }
+        return code;
+    }
+
+    private long cutoff() {
+        return toMillis(LocalDateTime.now().minus(properties.getRetention()));
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static long toUnits(BigDecimal amount, RoundingMode rounding) {
+        BigInteger units = amount.setScale(AMOUNT_SCALE, rounding).unscaledValue();
+        if (units.bitLength() >= Long.SIZE) {
+            return units.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return units.longValue();
+    }
+
+    private static BigDecimal fromUnits(long units) {
+        return BigDecimal.valueOf(units, AMOUNT_SCALE);
+    }
+
+    // pairCode -1 for any pair
+    private record Filter(int pairCode, long minUnits, long maxUnits, long fromMillis, long toMillis) {
+    }
+
+    /**
+     * Appended by the single writer; the volatile size publishes the rows below it and the time
+     * range written before it, so scans read up to size without locking.
+     */
+    private static final class Segment {
+        private final long[] timestamps;
+        private final short[] pairCodes;
+        private final long[] amounts;
+        private final double[] rates;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private volatile int size;
+
+        Segment(int capacity) {
+            timestamps = new long[capacity];
+            pairCodes = new short[capacity];
+            amounts = new long[capacity];
+            rates = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == timestamps.length;
+        }
+
+        void append(long timestamp, short pairCode, long amount, double rate) {
+            int row = size;
+            timestamps[row] = timestamp;
+            pairCodes[row] = pairCode;
+            amounts[row] = amount;
+            rates[row] = rate;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            size = row + 1;
+        }
+
+        Partial scan(Filter filter) {
+            int rows = size;
+            Partial partial = new Partial();
+            if (rows == 0 || maxTimestamp < filter.fromMillis() || minTimestamp >= filter.toMillis()) {
+                partial.skipped = 1;
+                return partial;
+            }
+            partial.scanned = 1;
+            for (int row = 0; row < rows; row++) {
+                long timestamp = timestamps[row];
+                long amount = amounts[row];
+                int pairCode = pairCodes[row];
+                if (timestamp >= filter.fromMillis() && timestamp < filter.toMillis()
+                        && amount >= filter.minUnits() && amount <= filter.maxUnits()
+                        && (filter.pairCode() < 0 || pairCode == filter.pairCode())) {
+                    partial.totals(pairCode).add(amount, rates[row]);
+                }
+            }
+            return partial;
+        }
+    }
+
+    private static final class Partial {
+        private Totals[] totals = new Totals[0];
+        private int scanned;
+        private int skipped;
+
+        Totals totals(int pairCode) {
+            if (pairCode >= totals.length) {
+                Totals[] grown = new Totals[Math.max(pairCode + 1, totals.length * 2)];
+                System.arraycopy(totals, 0, grown, 0, totals.length);
+                totals = grown;
+            }
+            if (totals[pairCode] == null) {
+                totals[pairCode] = new Totals();
+            }
+            return totals[pairCode];
+        }
+
+        Partial merge(Partial other) {
+            Partial merged = new Partial();
+            merged.scanned = scanned + other.scanned;
+            merged.skipped = skipped + other.skipped;
+            for (Partial partial : List.of(this, other)) {
+                for (int code = 0; code < partial.totals.length; code++) {
+                    if (partial.totals[code] != null) {
+                        merged.totals(code).merge(partial.totals[code]);
+                    }
+                }
+            }
+            return merged;
+        }
+    }
+
+    // amounts in 1/10000 units; the sum spills into a BigInteger instead of overflowing
+    private static final class Totals {
+        private long deals;
+        private long sum;
+        private BigInteger spilled = BigInteger.ZERO;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private double rateUnits;
+
+        void add(long amount, double rate) {
+            deals++;
+            addToSum(amount);
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+            rateUnits += amount * rate;
+        }
+
+        void merge(Totals other) {
+            deals += other.deals;
+            addToSum(other.sum);
+            spilled = spilled.add(other.spilled);
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            rateUnits += other.rateUnits;
+        }
+
+        BigDecimal notional() {
+            return new BigDecimal(spilled.add(BigInteger.valueOf(sum)), AMOUNT_SCALE);
+        }
+
+        Double averageRate() {
+            BigDecimal notional = notional();
+            return notional.signum() == 0 ? null : rateUnits / notional.movePointRight(AMOUNT_SCALE).doubleValue();
+        }
+
+        private void addToSum(long amount) {
+            try {
+                sum = Math.addExact(sum, amount);
+            } catch (ArithmeticException e) {
+                spilled = spilled.add(BigInteger.valueOf(sum));
+                sum = amount;
+            }
+        }
+    }
+}
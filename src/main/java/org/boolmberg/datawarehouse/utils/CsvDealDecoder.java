@@ -0,0 +1,400 @@
+package org.boolmberg.datawarehouse.utils;
+
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.exception.InvalidFileException;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Splits upload CSV records straight from bytes and parses the deal columns without a String per
+ * cell: currency codes come from a shared table, amounts and rates are accumulated digit by digit
+ * and timestamps are read at fixed offsets. Quoting follows RFC 4180 (doubled quotes, separators
+ * and line breaks inside quotes), records end at \n, \r\n or \r, and cells are trimmed as before.
+ * Anything the fast paths don't cover, e.g. exponents or 5-digit years, goes through the same
+ * BigDecimal and DateTimeFormatter parsing as before, so both accept exactly the same values.
+ */
+public final class CsvDealDecoder {
+
+    private static final DateTimeFormatter[] DATE_FORMATTERS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"),
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME
+    };
+
+    private static final int COLUMNS = 6;
+    private static final int MAX_FAST_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // every upper-case 3-letter code, filled on first use; racy but Strings are safely published
+    private static final String[] CURRENCY_CODES = new String[26 * 26 * 26];
+
+    // the current record, unquoted in place
+    private byte[] record = new byte[256];
+    private int[] cellStarts = new int[COLUMNS];
+    private int[] cellEnds = new int[COLUMNS];
+    private int cells;
+    // set by scanDecimal
+    private long unscaled;
+    private int scale;
+
+    /**
+     * Reads the record at the buffer's position into this decoder and moves past it. Returns false,
+     * leaving the buffer as it was, while the buffer holds no complete record; with endOfInput the
+     * remaining bytes are the last record.
+     */
+    public boolean readRecord(ByteBuffer in, boolean endOfInput) {
+        int start = in.position();
+        int limit = in.limit();
+        boolean quoted = false;
+        int end = -1;
+        int next = limit;
+        for (int i = start; i < limit; i++) {
+            byte b = in.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (b == '\n' || b == '\r')) {
+                if (b == '\r' && i + 1 == limit && !endOfInput) {
+                    // can't tell \r\n from \r yet
+                    return false;
+                }
+                end = i;
+                next = b == '\r' && i + 1 < limit && in.get(i + 1) == '\n' ? i + 2 : i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (!endOfInput || start == limit) {
+                return false;
+            }
+            if (quoted) {
+                throw new InvalidFileException("CSV file ends inside a quoted field");
+            }
+            end = limit;
+        }
+
+        int length = end - start;
+        if (record.length < length) {
+            record = new byte[Math.max(length, record.length * 2)];
+        }
+        in.get(start, record, 0, length);
+        in.position(next);
+        split(length);
+        return true;
+    }
+
+    // a record of cells that are all empty or whitespace
+    public boolean isBlank() {
+        for (int cell = 0; cell < cells; cell++) {
+            if (trimStart(cell) < trimEnd(cell)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int cellCount() {
+        return cells;
+    }
+
+    // untrimmed, as read
+    public String cell(int cell) {
+        return new String(record, cellStarts[cell], cellEnds[cell] - cellStarts[cell], StandardCharsets.UTF_8);
+    }
+
+    public FxDealDTO toDeal(int rowNumber) {
+        if (cells < COLUMNS) {
+            throw new IllegalArgumentException("Row must contain at least " + COLUMNS + " columns. Found: " + cells);
+        }
+        String dealId = text(0);
+        String fromCurrency = currency(1);
+        String toCurrency = currency(2);
+        LocalDateTime dealTimestamp = timestamp(3, rowNumber);
+        BigDecimal dealAmount = amount(4, rowNumber);
+        double exchangeRate = rate(5, rowNumber);
+
+        return FxDealDTO.builder()
+                .dealId(dealId)
+                .currencyFrom(fromCurrency)
+                .currencyTo(toCurrency)
+                .dealTimestamp(dealTimestamp)
+                .dealAmount(dealAmount)
+                .exchangeRate(exchangeRate)
+                .build();
+    }
+
+    private void split(int length) {
+        cells = 0;
+        int from = 0;
+        while (true) {
+            int write = from;
+            int read = from;
+            if (read < length && record[read] == '"') {
+                read++;
+                while (read < length) {
+                    byte b = record[read++];
+                    if (b == '"') {
+                        if (read < length && record[read] == '"') {
+                            read++;
+                        } else {
+                            break;
+                        }
+                    }
+                    record[write++] = b;
+                }
+            }
+            // unquoted, or whatever follows the closing quote
+            while (read < length && record[read] != ',') {
+                record[write++] = record[read++];
+            }
+            addCell(from, write);
+            if (read >= length) {
+                return;
+            }
+            from = read + 1;
+            if (from == length) {
+                addCell(from, from);
+                return;
+            }
+        }
+    }
+
+    private void addCell(int start, int end) {
+        if (cells == cellStarts.length) {
+            cellStarts = Arrays.copyOf(cellStarts, cells * 2);
+            cellEnds = Arrays.copyOf(cellEnds, cells * 2);
+        }
+        cellStarts[cells] = start;
+        cellEnds[cells] = end;
+        cells++;
+    }
+
+    private int trimStart(int cell) {
+        int start = cellStarts[cell];
+        int end = cellEnds[cell];
+        while (start < end && (record[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int cell) {
+        int start = cellStarts[cell];
+        int end = cellEnds[cell];
+        while (end > start && (record[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private String text(int cell) {
+        int start = trimStart(cell);
+        return new String(record, start, trimEnd(cell) - start, StandardCharsets.UTF_8);
+    }
+
+    private String currency(int cell) {
+        int start = trimStart(cell);
+        int end = trimEnd(cell);
+        if (end - start == 3) {
+            int code = letter(record[start]) * 676 + letter(record[start + 1]) * 26 + letter(record[start + 2]);
+            if (code >= 0) {
+                String currency = CURRENCY_CODES[code];
+                if (currency == null) {
+                    currency = new String(new char[]{
+                            (char) ('A' + code / 676), (char) ('A' + code / 26 % 26), (char) ('A' + code % 26)});
+                    CURRENCY_CODES[code] = currency;
+                }
+                return currency;
+            }
+        }
+        return new String(record, start, end - start, StandardCharsets.UTF_8).toUpperCase();
+    }
+
+    // 0-25 for an ASCII letter of either case, negative enough to spoil the code otherwise
+    private static int letter(byte b) {
+        int upper = b & ~0x20;
+        return upper >= 'A' && upper <= 'Z' ? upper - 'A' : -100_000;
+    }
+
+    private LocalDateTime timestamp(int cell, int rowNumber) {
+        int start = trimStart(cell);
+        int end = trimEnd(cell);
+        if (start == end) {
+            throw new IllegalArgumentException("Timestamp is empty at row " + rowNumber);
+        }
+        LocalDateTime timestamp = fastTimestamp(record, start, end);
+        if (timestamp != null) {
+            return timestamp;
+        }
+
+        String text = new String(record, start, end - start, StandardCharsets.UTF_8);
+        byte first = record[start];
+        // every accepted format starts with the year, possibly signed
+        if (isDigit(first) || first == '+' || first == '-') {
+            for (DateTimeFormatter formatter : DATE_FORMATTERS) {
+                try {
+                    return LocalDateTime.parse(text, formatter);
+                } catch (DateTimeParseException e) {
+                    // Try next formatter
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid timestamp format at row " + rowNumber + ": " + cell(cell));
+    }
+
+    /**
+     * yyyy-MM-dd'T'HH:mm:ss, yyyy-MM-dd HH:mm:ss and yyyy/MM/dd HH:mm:ss, which resolve a day past
+     * the month end to the last day, and the ISO forms without seconds or with a fraction, which
+     * don't. Null for anything else, including values the formatters might still accept.
+     */
+    static LocalDateTime fastTimestamp(byte[] b, int start, int end) {
+        int length = end - start;
+        if (length < 16) {
+            return null;
+        }
+        byte dateSeparator = b[start + 4];
+        byte timeSeparator = b[start + 10];
+        boolean iso = dateSeparator == '-' && timeSeparator == 'T';
+        if ((dateSeparator != '-' && dateSeparator != '/') || b[start + 7] != dateSeparator
+                || (timeSeparator != 'T' && timeSeparator != ' ') || b[start + 13] != ':'
+                || (dateSeparator == '/' && timeSeparator == 'T')) {
+            return null;
+        }
+        int year = digits(b, start, 4);
+        int month = digits(b, start + 5, 2);
+        int day = digits(b, start + 8, 2);
+        int hour = digits(b, start + 11, 2);
+        int minute = digits(b, start + 14, 2);
+        int second = 0;
+        int nanos = 0;
+        boolean clampDay = false;
+        if (length == 16) {
+            if (!iso) {
+                return null;
+            }
+        } else {
+            if (length < 19 || b[start + 16] != ':') {
+                return null;
+            }
+            second = digits(b, start + 17, 2);
+            if (length == 19) {
+                clampDay = true;
+            } else {
+                int fraction = length - 20;
+                if (!iso || b[start + 19] != '.' || fraction < 1 || fraction > 9) {
+                    return null;
+                }
+                nanos = digits(b, start + 20, fraction);
+                if (nanos < 0) {
+                    return null;
+                }
+                for (int i = fraction; i < 9; i++) {
+                    nanos *= 10;
+                }
+            }
+        }
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        int monthLength = Month.of(month).length(Year.isLeap(year));
+        if (day > monthLength) {
+            if (!clampDay) {
+                return null;
+            }
+            day = monthLength;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second, nanos);
+    }
+
+    // negative unless all count bytes are digits
+    private static int digits(byte[] b, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (!isDigit(b[i])) {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + (b[i] - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private BigDecimal amount(int cell, int rowNumber) {
+        int start = trimStart(cell);
+        int end = trimEnd(cell);
+        if (start == end) {
+            throw new IllegalArgumentException("Amount is empty at row " + rowNumber);
+        }
+        if (scanDecimal(start, end)) {
+            return BigDecimal.valueOf(unscaled, scale);
+        }
+        return slowDecimal(start, end, rowNumber);
+    }
+
+    private double rate(int cell, int rowNumber) {
+        int start = trimStart(cell);
+        int end = trimEnd(cell);
+        if (start == end) {
+            throw new IllegalArgumentException("Amount is empty at row " + rowNumber);
+        }
+        // both exactly representable, so one division rounds the same as BigDecimal.doubleValue
+        if (scanDecimal(start, end) && Math.abs(unscaled) <= 1L << 53 && scale < POWERS_OF_TEN.length) {
+            return unscaled / POWERS_OF_TEN[scale];
+        }
+        return slowDecimal(start, end, rowNumber).doubleValue();
+    }
+
+    // [+-]digits[.digits] with at most 18 digits into unscaled and scale
+    private boolean scanDecimal(int start, int end) {
+        int i = start;
+        boolean negative = record[i] == '-';
+        if (negative || record[i] == '+') {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int point = -1;
+        for (; i < end; i++) {
+            byte b = record[i];
+            if (isDigit(b)) {
+                value = value * 10 + (b - '0');
+                digits++;
+            } else if (b == '.' && point < 0) {
+                point = i;
+            } else {
+                return false;
+            }
+        }
+        if (digits == 0 || digits > MAX_FAST_DIGITS) {
+            return false;
+        }
+        unscaled = negative ? -value : value;
+        scale = point < 0 ? 0 : end - point - 1;
+        return true;
+    }
+
+    private BigDecimal slowDecimal(int start, int end, int rowNumber) {
+        try {
+            return new BigDecimal(new String(record, start, end - start, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Invalid amount format at row " + rowNumber + ": " + new String(record, start, end - start,
+                            StandardCharsets.UTF_8), e);
+        }
+    }
+}
@@ -1,152 +1,496 @@
 package org.boolmberg.datawarehouse.utils;
 
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvException;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.boolmberg.datawarehouse.dto.FxDealDTO;
 import org.boolmberg.datawarehouse.exception.InvalidFileException;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 @Slf4j
 public final class FileUtils {
 
-    private static final DateTimeFormatter[] DATE_FORMATTERS = {
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
-            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"),
-            DateTimeFormatter.ISO_LOCAL_DATE_TIME
-    };
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAGIC_BYTES = 4;
+
+    public enum Compression {
+        NONE, GZIP, ZIP;
+
+        static Compression of(byte[] magic) {
+            if (magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+                return GZIP;
+            }
+            if (magic.length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+                return ZIP;
+            }
+            return NONE;
+        }
+    }
+
+    // a parser that numbers records itself hands them over with that number
+    public interface RowSink {
+        void accept(int rowNumber, FxDealDTO deal);
+
+        // a record that couldn't be read into a deal
+        void reject(int rowNumber, String dealId, String message);
+    }
+
+    // same layout as the upload format, so an export can be uploaded again
+    public static final String CSV_HEADER = "dealUniqueId,fromCurrency,toCurrency,dealTimestamp,dealAmount,exchangerate";
 
     private FileUtils() {}
 
 
     public static void pareFile(MultipartFile file, List<FxDealDTO> target) {
+        streamFile(file, target::add);
+    }
+
+    public static int streamFile(MultipartFile file, Consumer<FxDealDTO> sink) {
         if (file == null || file.isEmpty()) {
             throw new InvalidFileException("file is invalid");
         }
-//
-//        String contentType = file.getContentType();
-//        log.info("contentType: {}", contentType);
-//        if (contentType == null ||
-//                !(contentType.equalsIgnoreCase("text/csv") ||
-//                        contentType.equalsIgnoreCase("application/vnd.ms-excel") ||
-//                        contentType.equalsIgnoreCase("text/plain"))) {
-//
-//            throw new InvalidFileException("Invalid file type. Expected CSV");
-//        }
-
-        try (CSVReader csvReader = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-            List<String[]> records = csvReader.readAll();
-
-            if (records.isEmpty()) {
-                log.warn("CSV file is empty");
-                return;
-            }
 
-            // Skip header row
-            for (int i = 1; i < records.size(); i++) {
-                String[] row = records.get(i);
+        try (InputStream inputStream = file.getInputStream()) {
+            return streamCsv(inputStream, sink);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-                if (row.length == 0 || isEmptyRow(row)) {
-                    log.debug("Skipping empty row at line {}", i + 1);
-                    continue;
+    // Reads one record at a time and hands each parsed deal to the sink, so the rows
+    // of the whole file are never held in memory together; gzip is inflated as it is read.
+    // Returns the number of deals.
+    public static int streamCsv(InputStream compressed, Consumer<FxDealDTO> sink) {
+        CsvDealDecoder decoder = new CsvDealDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        Records records = new Records(0, sink);
+        try (InputStream inputStream = inflate(compressed)) {
+            boolean endOfInput = false;
+            do {
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // a record longer than the buffer
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
                 }
+                int read = inputStream.read(buffer.array(), buffer.position(), buffer.remaining());
+                endOfInput = read < 0;
+                buffer.position(buffer.position() + Math.max(read, 0)).flip();
+                records.decode(decoder, buffer, endOfInput);
+            } while (!endOfInput);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return records.finish();
+    }
 
-                try {
-                    FxDealDTO deal = parseRow(row, i + 1);
-                    target.add(deal);
-                } catch (Exception e) {
-                    log.error("Error parsing row {}: {}", i + 1, e.getMessage());
-                    // Create a deal with the error for proper error handling
-                    FxDealDTO errorDeal = FxDealDTO.builder()
-                            .dealId(row.length > 0 ? row[0] : "UNKNOWN_ROW_" + (i + 1))
-                            .build();
-                    target.add(errorDeal);
+    // Reads NDJSON, or one JSON array of deals, a value at a time so the body is never held in
+    // memory; gzip is inflated as it is read. NDJSON records are numbered by the line they start
+    // on, array elements by their position. Returns the number of records.
+    public static int streamJson(InputStream compressed, ObjectMapper objectMapper, RowSink sink) {
+        int records = 0;
+        try (JsonParser parser = objectMapper.createParser(inflate(compressed))) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                records++;
+                int rowNumber = array ? records : parser.currentTokenLocation().getLineNr();
+                readDeal(parser, objectMapper, rowNumber, sink);
+                token = parser.nextToken();
+            }
+        } catch (StreamReadException e) {
+            // there is no telling where the next record starts
+            JsonLocation location = e.getLocation();
+            throw new InvalidFileException("Malformed JSON"
+                    + (location == null ? "" : " at line " + location.getLineNr() + ", column " + location.getColumnNr())
+                    + ": " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Successfully parsed {} deals from JSON", records);
+        return records;
+    }
+
+    private static void readDeal(JsonParser parser, ObjectMapper objectMapper, int rowNumber, RowSink sink)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            sink.reject(rowNumber, null, "Row must be a JSON object");
+            return;
+        }
+        JsonNode node = objectMapper.readTree(parser);
+        FxDealDTO deal;
+        try {
+            deal = objectMapper.treeToValue(node, FxDealDTO.class);
+        } catch (JsonMappingException e) {
+            JsonNode dealId = node.get("dealId");
+            String field = e.getPath().stream()
+                    .map(reference -> String.valueOf(reference.getFieldName()))
+                    .collect(Collectors.joining("."));
+            sink.reject(rowNumber, dealId != null && dealId.isValueNode() ? dealId.asText() : null,
+                    "Invalid " + field + ": " + e.getOriginalMessage());
+            return;
+        }
+        sink.accept(rowNumber, deal);
+    }
+
+    // Gunzips gzip, zip can't be read as a single stream. Closing the result frees the inflater's
+    // native memory but leaves the caller's stream open, e.g. for the next entry of a zip.
+    private static InputStream inflate(InputStream compressed) {
+        try {
+            PushbackInputStream peekable = new PushbackInputStream(new FilterInputStream(compressed) {
+                @Override
+                public void close() {
                 }
+            }, MAGIC_BYTES);
+            Compression compression = detectCompression(peekable);
+            if (compression == Compression.ZIP) {
+                throw new InvalidFileException("A zip archive can only be imported entry by entry");
             }
+            return compression == Compression.GZIP ? new GZIPInputStream(peekable, BUFFER_SIZE) : peekable;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            log.info("Successfully parsed {} deals from CSV", target.size());
+    public static Compression detectCompression(MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return Compression.of(inputStream.readNBytes(MAGIC_BYTES));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        } catch (CsvException e) {
-            log.error("Error reading CSV file", e);
-            throw new RuntimeException("Failed to parse CSV file: " + e.getMessage(), e);
+    // SHA-256 of the bytes as uploaded, i.e. before any gzip or zip is inflated
+    public static String checksum(InputStreamSource source) {
+        return fingerprint(source).checksum();
+    }
+
+    // the checksum and the compression of an upload, read in one pass
+    public static Fingerprint fingerprint(InputStreamSource source) {
+        try (DigestInputStream inputStream = new DigestInputStream(source.getInputStream(), sha256())) {
+            Compression compression = Compression.of(inputStream.readNBytes(MAGIC_BYTES));
+            inputStream.transferTo(OutputStream.nullOutputStream());
+            return new Fingerprint(HexFormat.of().formatHex(inputStream.getMessageDigest().digest()), compression);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record Fingerprint(String checksum, Compression compression) {
+    }
+
+    // copies the upload to target and returns its checksum, hashed on the way
+    public static String copy(InputStreamSource source, Path target) {
+        try (DigestInputStream inputStream = new DigestInputStream(source.getInputStream(), sha256())) {
+            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+            return HexFormat.of().formatHex(inputStream.getMessageDigest().digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private static boolean isEmptyRow(String[] row) {
-        for (String cell : row) {
-            if (cell != null && !cell.trim().isEmpty()) {
-                return false;
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // peeks at the magic bytes and pushes them back
+    public static Compression detectCompression(PushbackInputStream inputStream) throws IOException {
+        byte[] magic = inputStream.readNBytes(MAGIC_BYTES);
+        inputStream.unread(magic);
+        return Compression.of(magic);
+    }
+
+    // Hands each file in a zip archive to the sink as a stream inflated while it is read,
+    // skipping folders and OS metadata. Returns the number of entries handed over.
+    public static int streamZip(InputStream inputStream, BiConsumer<String, InputStream> sink) {
+        int entries = 0;
+        try {
+            ZipInputStream zip = new ZipInputStream(inputStream);
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                String name = entry.getName();
+                String fileName = name.substring(name.lastIndexOf('/') + 1);
+                if (entry.isDirectory() || name.startsWith("__MACOSX/") || fileName.startsWith(".")) {
+                    log.debug("Skipping zip entry {}", name);
+                    continue;
+                }
+                sink.accept(name, zip);
+                entries++;
             }
+        } catch (IOException e) {
+            throw new InvalidFileException("Invalid zip archive: " + e.getMessage());
         }
-        return true;
+        if (entries == 0) {
+            log.warn("Zip archive holds no files");
+        }
+        return entries;
     }
 
-    private static FxDealDTO parseRow(String[] row, int rowNumber) {
-        if (row.length < 5) {
-            throw new IllegalArgumentException(
-                    "Row must contain at least 5 columns. Found: " + row.length
-            );
+    /**
+     * Same rows as {@link #streamCsv} for a file on local disk, without copying it: the file is
+     * split at line breaks into parts of about partSize bytes that are memory-mapped and decoded
+     * on the executor, at most parallelism at a time. Deals still reach the sink in file order.
+     */
+    public static int streamFile(Path file, long partSize, Executor executor, int parallelism,
+                                 Consumer<FxDealDTO> sink) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Part> parts = split(channel, Math.max(1, partSize), executor);
+            Deque<CompletableFuture<List<FxDealDTO>>> decoding = new ArrayDeque<>();
+            int next = 0;
+            int parsed = 0;
+            try {
+                while (next < parts.size() || !decoding.isEmpty()) {
+                    while (next < parts.size() && decoding.size() < Math.max(1, parallelism)) {
+                        Part part = parts.get(next++);
+                        decoding.add(CompletableFuture.supplyAsync(() -> decodePart(channel, part), executor));
+                    }
+                    List<FxDealDTO> deals = join(decoding.poll());
+                    deals.forEach(sink);
+                    parsed += deals.size();
+                }
+            } finally {
+                decoding.forEach(future -> future.cancel(false));
+            }
+            if (parts.isEmpty()) {
+                log.warn("CSV file is empty");
+            } else {
+                log.info("Successfully parsed {} deals from {} in {} parts", parsed, file.getFileName(), parts.size());
+            }
+            return parsed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        String dealUniqueId = row[0] != null ? row[0].trim() : null;
-        String fromCurrency = row[1] != null ? row[1].trim().toUpperCase() : null;
-        String toCurrency = row[2] != null ? row[2].trim().toUpperCase() : null;
-        LocalDateTime dealTimestamp = parseTimestamp(row[3], rowNumber);
-        BigDecimal dealAmount = parseAmount(row[4], rowNumber);
-        Double exchangeRte = parseAmount(row[5], rowNumber).doubleValue();
+    // byte range of a file holding whole records, the first of them at the given line
+    private record Part(long start, long end, int firstLine) {
+    }
+
+    private static List<Part> split(FileChannel channel, long partSize, Executor executor) throws IOException {
+        long size = channel.size();
+        List<Long> starts = new ArrayList<>();
+        for (long start = 0; start < size; ) {
+            starts.add(start);
+            start = start + partSize >= size ? size : nextLine(channel, start + partSize, size);
+        }
 
-        return FxDealDTO.builder()
-                .dealId(dealUniqueId)
-                .currencyFrom(fromCurrency)
-                .currencyTo(toCurrency)
-                .dealTimestamp(dealTimestamp)
-                .dealAmount(dealAmount)
-                .exchangeRate(exchangeRte)
-                .build();
+        // a line break inside a quoted cell is no boundary: count quotes to find those
+        List<CompletableFuture<long[]>> counting = new ArrayList<>(starts.size());
+        for (int i = 0; i < starts.size(); i++) {
+            long start = starts.get(i);
+            long end = i + 1 < starts.size() ? starts.get(i + 1) : size;
+            counting.add(CompletableFuture.supplyAsync(() -> countPart(channel, start, end), executor));
+        }
+        List<Part> parts = new ArrayList<>(starts.size());
+        boolean quoted = false;
+        long partStart = 0;
+        long lines = 0;
+        long partLines = 0;
+        for (int i = 0; i < starts.size(); i++) {
+            long[] counts = join(counting.get(i));
+            if (i > 0 && !quoted) {
+                parts.add(part(partStart, starts.get(i), lines));
+                partStart = starts.get(i);
+                lines += partLines;
+                partLines = 0;
+            }
+            // line breaks outside quotes, which flip if the part starts inside a quoted cell
+            partLines += quoted ? counts[1] - counts[2] : counts[2];
+            quoted ^= (counts[0] & 1) == 1;
+        }
+        if (!starts.isEmpty()) {
+            parts.add(part(partStart, size, lines));
+        }
+        return parts;
     }
 
-    private static LocalDateTime parseTimestamp(String timestampStr, int rowNumber) {
-        if (timestampStr == null || timestampStr.trim().isEmpty()) {
-            throw new IllegalArgumentException("Timestamp is empty at row " + rowNumber);
+    private static Part part(long start, long end, long linesBefore) {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new InvalidFileException("CSV file has a quoted cell spanning more than 2GB");
         }
+        return new Part(start, end, (int) linesBefore + 1);
+    }
 
-        String trimmed = timestampStr.trim();
+    // start of the line after position, or size
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        for (long window = position; window < size; window += BUFFER_SIZE) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, window,
+                    Math.min(BUFFER_SIZE, size - window));
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return window + i + 1;
+                }
+            }
+        }
+        return size;
+    }
 
-        for (DateTimeFormatter formatter : DATE_FORMATTERS) {
-            try {
-                return LocalDateTime.parse(trimmed, formatter);
-            } catch (DateTimeParseException e) {
-                // Try next formatter
+    // quotes, line breaks, and line breaks outside quotes when starting outside
+    private static long[] countPart(FileChannel channel, long start, long end) {
+        MappedByteBuffer buffer = map(channel, start, end);
+        long quotes = 0;
+        long lineBreaks = 0;
+        long unquotedLineBreaks = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                quotes++;
+            } else if (b == '\n') {
+                lineBreaks++;
+                if ((quotes & 1) == 0) {
+                    unquotedLineBreaks++;
+                }
             }
         }
+        return new long[]{quotes, lineBreaks, unquotedLineBreaks};
+    }
 
-        throw new IllegalArgumentException(
-                "Invalid timestamp format at row " + rowNumber + ": " + timestampStr
-        );
+    private static List<FxDealDTO> decodePart(FileChannel channel, Part part) {
+        List<FxDealDTO> deals = new ArrayList<>();
+        Records records = new Records(part.start() == 0 ? 0 : part.firstLine() - 1, deals::add);
+        records.decode(new CsvDealDecoder(), map(channel, part.start(), part.end()), true);
+        return deals;
     }
 
-    private static BigDecimal parseAmount(String amountStr, int rowNumber) {
-        if (amountStr == null || amountStr.trim().isEmpty()) {
-            throw new IllegalArgumentException("Amount is empty at row " + rowNumber);
+    private static MappedByteBuffer map(FileChannel channel, long start, long end) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
+    private static <T> T join(CompletableFuture<T> future) {
         try {
-            return new BigDecimal(amountStr.trim());
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(
-                    "Invalid amount format at row " + rowNumber + ": " + amountStr, e
-            );
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // turns decoded records into deals: skips the header and blank rows, numbers the lines
+    private static final class Records {
+        private final Consumer<FxDealDTO> sink;
+        private int line;
+        private int parsed;
+
+        Records(int linesBefore, Consumer<FxDealDTO> sink) {
+            this.line = linesBefore;
+            this.sink = sink;
+        }
+
+        void decode(CsvDealDecoder decoder, ByteBuffer buffer, boolean endOfInput) {
+            while (decoder.readRecord(buffer, endOfInput)) {
+                line++;
+                // Skip header row
+                if (line == 1) {
+                    continue;
+                }
+                if (decoder.isBlank()) {
+                    log.debug("Skipping empty row at line {}", line);
+                    continue;
+                }
+
+                FxDealDTO deal;
+                try {
+                    deal = decoder.toDeal(line);
+                } catch (Exception e) {
+                    log.error("Error parsing row {}: {}", line, e.getMessage());
+                    // Create a deal with the error for proper error handling
+                    deal = FxDealDTO.builder()
+                            .dealId(decoder.cell(0))
+                            .build();
+                }
+                sink.accept(deal);
+                parsed++;
+            }
+        }
+
+        int finish() {
+            if (line == 0) {
+                log.warn("CSV file is empty");
+                return 0;
+            }
+            log.info("Successfully parsed {} deals from CSV", parsed);
+            return parsed;
+        }
+    }
+
+    public static void writeCsvRow(Writer writer, FxDealDTO deal) throws IOException {
+        writeCsvCell(writer, deal.getDealId());
+        writer.write(',');
+        writer.write(deal.getCurrencyFrom());
+        writer.write(',');
+        writer.write(deal.getCurrencyTo());
+        writer.write(',');
+        DateTimeFormatter.ISO_LOCAL_DATE_TIME.formatTo(deal.getDealTimestamp(), writer);
+        writer.write(',');
+        writer.write(deal.getDealAmount().toPlainString());
+        writer.write(',');
+        writer.write(Double.toString(deal.getExchangeRate()));
+        writer.write('\n');
+    }
+
+    private static void writeCsvCell(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
         }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
     }
 }
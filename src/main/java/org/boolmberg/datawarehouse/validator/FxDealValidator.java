@@ -1,7 +1,5 @@
 package org.boolmberg.datawarehouse.validator;
 
-import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
 import org.boolmberg.datawarehouse.dto.FxDealDTO;
 import org.boolmberg.datawarehouse.exception.ValidationException;
@@ -9,85 +7,127 @@ import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.BitSet;
 import java.util.Currency;
-import java.util.HashSet;
-import java.util.Set;
 
 @Component
 @Slf4j
 public class FxDealValidator {
 
-    private static final Set<String> VALID_ISO_CODES = new HashSet<>();
+    // one bit per AAA..ZZZ code, set for the ISO 4217 codes known to the JDK
+    private static final BitSet VALID_ISO_CODES = new BitSet(26 * 26 * 26);
 
     static {
-        Currency.getAvailableCurrencies().forEach(currency ->
-                VALID_ISO_CODES.add(currency.getCurrencyCode())
-        );
+        Currency.getAvailableCurrencies().forEach(currency -> {
+            int index = codeIndex(currency.getCurrencyCode());
+            if (index >= 0) {
+                VALID_ISO_CODES.set(index);
+            }
+        });
     }
 
     public void validate(FxDealDTO dealDto) {
         log.debug("Validating FX deal: {}", dealDto.getDealId());
 
-        validateDealId(dealDto.getDealId());
-        validateCurrencyCode(dealDto.getCurrencyFrom(), "From currency");
-        validateCurrencyCode(dealDto.getCurrencyTo(), "To currency");
-        validateDifferentCurrencies(dealDto.getCurrencyFrom(), dealDto.getCurrencyTo());
-        validateDealTimestamp(dealDto.getDealTimestamp());
-        validateDealAmount(dealDto.getDealAmount());
-        validateExchangeRate(dealDto.getExchangeRate());
+        ValidationError error = check(dealDto, maxDealTimestamp());
+        if (error != null) {
+            throw new ValidationException(error.message(dealDto));
+        }
+    }
+
+    // latest deal timestamp accepted right now; bulk imports take it once per batch
+    public LocalDateTime maxDealTimestamp() {
+        return LocalDateTime.now().plusDays(1);
     }
 
-    private void validateDealId(String dealId) {
-        if (dealId == null || dealId.trim().isEmpty()) {
-            throw new ValidationException("Deal unique ID cannot be empty");
+    // returns null when the deal is valid, never throws
+    public ValidationError check(FxDealDTO dealDto, LocalDateTime maxDealTimestamp) {
+        String dealId = dealDto.getDealId();
+        if (isBlank(dealId)) {
+            return ValidationError.DEAL_ID_EMPTY;
         }
         if (dealId.length() > 255) {
-            throw new ValidationException("Deal unique ID exceeds maximum length of 255 characters");
+            return ValidationError.DEAL_ID_TOO_LONG;
         }
-    }
 
-    private void validateCurrencyCode(String currencyCode, String fieldName) {
-        if (currencyCode == null || currencyCode.trim().isEmpty()) {
-            throw new ValidationException(fieldName + " ISO code cannot be empty");
+        String from = dealDto.getCurrencyFrom();
+        if (isBlank(from)) {
+            return ValidationError.FROM_CURRENCY_EMPTY;
         }
-        if (!currencyCode.matches("^[A-Z]{3}$")) {
-            throw new ValidationException(fieldName + " must be a 3-letter uppercase ISO code");
+        int fromIndex = codeIndex(from);
+        if (fromIndex < 0) {
+            return ValidationError.FROM_CURRENCY_FORMAT;
         }
-        if (!VALID_ISO_CODES.contains(currencyCode)) {
-            throw new ValidationException(fieldName + " '" + currencyCode + "' is not a valid ISO 4217 currency code");
+        if (!VALID_ISO_CODES.get(fromIndex)) {
+            return ValidationError.FROM_CURRENCY_UNKNOWN;
         }
-    }
 
-    private void validateDifferentCurrencies(String fromCurrency, String toCurrency) {
-        if (fromCurrency != null && fromCurrency.equals(toCurrency)) {
-            throw new ValidationException("From currency and To currency must be different");
+        String to = dealDto.getCurrencyTo();
+        if (isBlank(to)) {
+            return ValidationError.TO_CURRENCY_EMPTY;
+        }
+        int toIndex = codeIndex(to);
+        if (toIndex < 0) {
+            return ValidationError.TO_CURRENCY_FORMAT;
+        }
+        if (!VALID_ISO_CODES.get(toIndex)) {
+            return ValidationError.TO_CURRENCY_UNKNOWN;
+        }
+        if (fromIndex == toIndex) {
+            return ValidationError.SAME_CURRENCIES;
         }
-    }
 
-    private void validateDealTimestamp(LocalDateTime dealTimestamp) {
+        LocalDateTime dealTimestamp = dealDto.getDealTimestamp();
         if (dealTimestamp == null) {
-            throw new ValidationException("Deal timestamp cannot be null");
+            return ValidationError.TIMESTAMP_NULL;
         }
-        LocalDateTime maxAllowedTime = LocalDateTime.now().plusDays(1);
-        if (dealTimestamp.isAfter(maxAllowedTime)) {
-            throw new ValidationException("Deal timestamp cannot be more than 1 day in the future");
+        if (dealTimestamp.isAfter(maxDealTimestamp)) {
+            return ValidationError.TIMESTAMP_IN_FUTURE;
         }
-    }
 
-    private void validateExchangeRate(Double exchangeRate) {
-        if (exchangeRate == null) {
-            throw new ValidationException("Exchange rate cannot be null");
-        }
-    }
-    private void validateDealAmount(BigDecimal dealAmount) {
+        BigDecimal dealAmount = dealDto.getDealAmount();
         if (dealAmount == null) {
-            throw new ValidationException("Deal amount cannot be null");
+            return ValidationError.AMOUNT_NULL;
         }
-        if (dealAmount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ValidationException("Deal amount must be greater than zero");
+        if (dealAmount.signum() <= 0) {
+            return ValidationError.AMOUNT_NOT_POSITIVE;
         }
         if (dealAmount.scale() > 4) {
-            throw new ValidationException("Deal amount cannot have more than 4 decimal places");
+            return ValidationError.AMOUNT_SCALE;
+        }
+
+        if (dealDto.getExchangeRate() == null) {
+            return ValidationError.EXCHANGE_RATE_NULL;
+        }
+        return null;
+    }
+
+    // position of a 3-letter uppercase code in the bitset, -1 for anything else
+    private static int codeIndex(String code) {
+        if (code.length() != 3) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            index = index * 26 + (c - 'A');
+        }
+        return index;
+    }
+
+    // same as trim().isEmpty() without the copy
+    private static boolean isBlank(String value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
         }
+        return true;
     }
 }
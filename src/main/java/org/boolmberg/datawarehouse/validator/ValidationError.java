@@ -0,0 +1,49 @@
+package org.boolmberg.datawarehouse.validator;
+
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+
+/**
+ * Reason a deal was rejected by {@link FxDealValidator#check}. The message is only built when
+ * it is reported, so rejecting a row costs no allocation.
+ */
+public enum ValidationError {
+    DEAL_ID_EMPTY("Deal unique ID cannot be empty"),
+    DEAL_ID_TOO_LONG("Deal unique ID exceeds maximum length of 255 characters"),
+    FROM_CURRENCY_EMPTY("From currency ISO code cannot be empty"),
+    FROM_CURRENCY_FORMAT("From currency must be a 3-letter uppercase ISO code"),
+    FROM_CURRENCY_UNKNOWN(null) {
+        @Override
+        public String message(FxDealDTO deal) {
+            return unknownCurrency("From currency", deal.getCurrencyFrom());
+        }
+    },
+    TO_CURRENCY_EMPTY("To currency ISO code cannot be empty"),
+    TO_CURRENCY_FORMAT("To currency must be a 3-letter uppercase ISO code"),
+    TO_CURRENCY_UNKNOWN(null) {
+        @Override
+        public String message(FxDealDTO deal) {
+            return unknownCurrency("To currency", deal.getCurrencyTo());
+        }
+    },
+    SAME_CURRENCIES("From currency and To currency must be different"),
+    TIMESTAMP_NULL("Deal timestamp cannot be null"),
+    TIMESTAMP_IN_FUTURE("Deal timestamp cannot be more than 1 day in the future"),
+    AMOUNT_NULL("Deal amount cannot be null"),
+    AMOUNT_NOT_POSITIVE("Deal amount must be greater than zero"),
+    AMOUNT_SCALE("Deal amount cannot have more than 4 decimal places"),
+    EXCHANGE_RATE_NULL("Exchange rate cannot be null");
+
+    private final String message;
+
+    ValidationError(String message) {
+        this.message = message;
+    }
+
+    public String message(FxDealDTO deal) {
+        return message;
+    }
+
+    private static String unknownCurrency(String fieldName, String currencyCode) {
+        return fieldName + " '" + currencyCode + "' is not a valid ISO 4217 currency code";
+    }
+}
@@ -0,0 +1,107 @@
+package org.boolmberg.datawarehouse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.boolmberg.datawarehouse.api.Admission;
+import org.boolmberg.datawarehouse.api.AdmissionInterceptor;
+import org.boolmberg.datawarehouse.app.AdmissionControl;
+import org.boolmberg.datawarehouse.config.AdmissionLane;
+import org.boolmberg.datawarehouse.config.AdmissionProperties;
+import org.boolmberg.datawarehouse.exception.CapacityExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private final AdmissionProperties properties = new AdmissionProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void enter_LaneFull_RejectedWithRetryAfter() {
+        properties.setBulk(new AdmissionProperties.Lane(1, Duration.ZERO, Duration.ofSeconds(7)));
+        AdmissionControl admissionControl = new AdmissionControl(properties, meterRegistry, null);
+
+        admissionControl.enter(AdmissionLane.BULK);
+        // the other lane is unaffected
+        admissionControl.enter(AdmissionLane.INTERACTIVE);
+
+        CapacityExceededException e = assertThrows(CapacityExceededException.class,
+                () -> admissionControl.enter(AdmissionLane.BULK));
+        assertEquals(Duration.ofSeconds(7), e.getRetryAfter());
+        assertEquals(1, meterRegistry.get("fx.admission.rejected").tag("lane", "bulk").counter().count());
+        assertEquals(1, meterRegistry.get("fx.admission.active").tag("lane", "bulk").gauge().value());
+
+        admissionControl.leave(AdmissionLane.BULK);
+        admissionControl.enter(AdmissionLane.BULK);
+    }
+
+    @Test
+    void enter_SlotFreedWithinMaxWait_Admitted() throws Exception {
+        properties.setInteractive(new AdmissionProperties.Lane(1, Duration.ofSeconds(5), Duration.ofSeconds(1)));
+        AdmissionControl admissionControl = new AdmissionControl(properties, meterRegistry, null);
+        admissionControl.enter(AdmissionLane.INTERACTIVE);
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> admissionControl.enter(AdmissionLane.INTERACTIVE));
+        while (meterRegistry.get("fx.admission.waiting").tag("lane", "interactive").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+        admissionControl.leave(AdmissionLane.INTERACTIVE);
+
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(0, meterRegistry.get("fx.admission.rejected").tag("lane", "interactive").counter().count());
+    }
+
+    @Test
+    void acquireBulkConnection_BudgetSpent_WaitsForRelease() throws Exception {
+        properties.setBulkConnections(1);
+        AdmissionControl admissionControl = new AdmissionControl(properties, meterRegistry, null);
+        admissionControl.acquireBulkConnection();
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(admissionControl::acquireBulkConnection);
+        while (meterRegistry.get("fx.admission.db.connections.waiting").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+        assertFalse(waiting.isDone());
+        admissionControl.releaseBulkConnection();
+
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(1, meterRegistry.get("fx.admission.db.connections.active").gauge().value());
+    }
+
+    @Test
+    void interceptor_HoldsSlotUntilCompletion() throws Exception {
+        properties.setBulk(new AdmissionProperties.Lane(1, Duration.ZERO, Duration.ofSeconds(10)));
+        AdmissionControl admissionControl = new AdmissionControl(properties, meterRegistry, null);
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(admissionControl);
+        HandlerMethod upload = new HandlerMethod(new Handlers(), Handlers.class.getMethod("upload"));
+        HandlerMethod other = new HandlerMethod(new Handlers(), Handlers.class.getMethod("other"));
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(first, response, upload));
+        assertThrows(CapacityExceededException.class,
+                () -> interceptor.preHandle(new MockHttpServletRequest(), response, upload));
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), response, other));
+
+        interceptor.afterCompletion(first, response, upload, null);
+        interceptor.afterCompletion(first, response, upload, null);
+        assertEquals(0, meterRegistry.get("fx.admission.active").tag("lane", "bulk").gauge().value());
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), response, upload));
+    }
+
+    static class Handlers {
+        @Admission(AdmissionLane.BULK)
+        public void upload() {
+        }
+
+        public void other() {
+        }
+    }
+}
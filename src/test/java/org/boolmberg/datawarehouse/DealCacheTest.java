@@ -0,0 +1,93 @@
+package org.boolmberg.datawarehouse;
+
+import org.boolmberg.datawarehouse.config.DealCacheProperties;
+import org.boolmberg.datawarehouse.dto.CacheStatsDTO;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.service.DealCache;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.boolmberg.datawarehouse.TestDeals.deal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DealCacheTest {
+
+    private final DealCacheProperties properties = new DealCacheProperties();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void get_LoadsOnceThenHits() {
+        DealCache cache = new DealCache(properties);
+        Function<String, FxDealDTO> loader = id -> {
+            loads.incrementAndGet();
+            return deal(id);
+        };
+
+        assertEquals("DEAL-1", cache.get("DEAL-1", loader).getDealId());
+        assertEquals("DEAL-1", cache.get("DEAL-1", loader).getDealId());
+
+        assertEquals(1, loads.get());
+        CacheStatsDTO stats = cache.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    void get_MaximumSizeZero_EveryReadLoads() {
+        properties.setMaximumSize(0);
+        DealCache cache = new DealCache(properties);
+        Function<String, FxDealDTO> loader = id -> {
+            loads.incrementAndGet();
+            return deal(id);
+        };
+
+        cache.put(deal("DEAL-1"));
+        assertEquals("DEAL-1", cache.get("DEAL-1", loader).getDealId());
+        assertEquals("DEAL-1", cache.get("DEAL-1", loader).getDealId());
+
+        assertEquals(2, loads.get());
+        CacheStatsDTO stats = cache.stats();
+        assertEquals(0, stats.getSize());
+        assertEquals(0, stats.getMissCount());
+    }
+
+    @Test
+    void get_UnknownDeal_CachedUntilImported() {
+        DealCache cache = new DealCache(properties);
+        Function<String, FxDealDTO> loader = id -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        assertNull(cache.get("DEAL-1", loader));
+        assertNull(cache.get("DEAL-1", loader));
+        assertEquals(1, loads.get());
+
+        cache.put(deal("DEAL-1"));
+
+        FxDealDTO cached = cache.get("DEAL-1", loader);
+        assertEquals(new BigDecimal("100.2500"), cached.getDealAmount());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_NegativeEntryExpires() throws InterruptedException {
+        properties.setNegativeTtl(Duration.ofMillis(20));
+        DealCache cache = new DealCache(properties);
+        Function<String, FxDealDTO> loader = id -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        cache.get("DEAL-1", loader);
+        Thread.sleep(50);
+        cache.get("DEAL-1", loader);
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,107 @@
+package org.boolmberg.datawarehouse;
+
+import org.boolmberg.datawarehouse.dto.DealStatsDTO;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.StatsBucket;
+import org.boolmberg.datawarehouse.service.DealStatsService;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class DealStatsServiceTest {
+
+    @Autowired
+    private FxDealService fxDealService;
+    @Autowired
+    private DealStatsService dealStatsService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void importDeals_UpdatesRollupIncrementally() {
+        LocalDateTime hour = LocalDateTime.of(2023, 3, 1, 10, 0);
+        fxDealService.importDeals(List.of(
+                deal("NZD", "SGD", hour.plusMinutes(5), "100", 1.0),
+                deal("NZD", "SGD", hour.plusMinutes(50), "300", 2.0),
+                deal("NZD", "SGD", hour.plusHours(1), "50", 1.5)));
+        fxDealService.importDeal(deal("NZD", "SGD", hour.plusHours(2), "25.1234", 1.5));
+
+        List<DealStatsDTO> hours = dealStatsService.find("NZD", "SGD", StatsBucket.HOUR, hour, hour.plusDays(1));
+
+        assertEquals(3, hours.size());
+        assertEquals(hour, hours.get(0).getBucketStart());
+        assertEquals(2, hours.get(0).getDealCount());
+        assertEquals(0, new BigDecimal("400").compareTo(hours.get(0).getNotional()));
+        assertEquals(1.75, hours.get(0).getAverageRate(), 1e-9);
+        assertEquals(0, new BigDecimal("25.1234").compareTo(hours.get(2).getNotional()));
+
+        List<DealStatsDTO> days = dealStatsService.find("NZD", "SGD", StatsBucket.DAY, hour, null);
+        assertEquals(1, days.size());
+        assertEquals(hour.truncatedTo(ChronoUnit.DAYS), days.get(0).getBucketStart());
+        assertEquals(4, days.get(0).getDealCount());
+    }
+
+    @Test
+    void find_HotWindowMatchesRollupTable() {
+        LocalDateTime recent = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(3);
+        fxDealService.importDeals(List.of(
+                deal("HKD", "MXN", recent.plusMinutes(1), "1000.5", 2.5),
+                deal("HKD", "MXN", recent.plusMinutes(2), "10", 2.7)));
+
+        List<DealStatsDTO> fromWindow = dealStatsService.find("HKD", "MXN", StatsBucket.HOUR, recent, null);
+        // no lower bound can't be answered from memory
+        List<DealStatsDTO> fromTable = dealStatsService.find("HKD", "MXN", StatsBucket.HOUR, null, null);
+
+        assertEquals(1, fromWindow.size());
+        assertEquals(fromTable, fromWindow);
+        assertEquals(2, fromWindow.get(0).getDealCount());
+    }
+
+    @Test
+    void importDeals_RolledBack_LeavesStatsUntouched() {
+        LocalDateTime recent = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        FxDealDTO first = deal("PLN", "CZK", recent, "100", 5.0);
+        fxDealService.importDeals(List.of(first));
+
+        FxDealDTO repeated = deal("PLN", "CZK", recent, "100", 5.0);
+        repeated.setDealId(first.getDealId());
+        assertThrows(RuntimeException.class, () -> fxDealService.importDeals(List.of(
+                deal("PLN", "CZK", recent, "200", 5.0), repeated)));
+
+        assertEquals(1, dealStatsService.find("PLN", "CZK", StatsBucket.HOUR, recent, null).get(0).getDealCount());
+        assertEquals(1, dealStatsService.find("PLN", "CZK", StatsBucket.HOUR, null, null).get(0).getDealCount());
+    }
+
+    @Test
+    void rebuild_RestoresRollupFromDeals() {
+        LocalDateTime recent = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(5);
+        fxDealService.importDeals(List.of(
+                deal("DKK", "HUF", recent.plusMinutes(10), "70", 40.0),
+                deal("DKK", "HUF", recent.plusMinutes(20), "30", 50.0)));
+        List<DealStatsDTO> expected = dealStatsService.find("DKK", "HUF", StatsBucket.HOUR, recent, null);
+        jdbcTemplate.update("DELETE FROM fx_deal_hourly_stats WHERE currency_from = 'DKK'");
+
+        dealStatsService.rebuild(recent.plusMinutes(15), recent.plusMinutes(16));
+
+        assertEquals(expected, dealStatsService.find("DKK", "HUF", StatsBucket.HOUR, recent, null));
+        assertEquals(expected, dealStatsService.find("DKK", "HUF", StatsBucket.HOUR, null, null));
+        assertEquals(43.0, expected.get(0).getAverageRate(), 1e-9);
+    }
+
+    private static FxDealDTO deal(String from, String to, LocalDateTime timestamp, String amount, double rate) {
+        return TestDeals.deal("STATS-" + UUID.randomUUID(), from, to, timestamp, amount, rate);
+    }
+}
@@ -0,0 +1,90 @@
+package org.boolmberg.datawarehouse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.boolmberg.datawarehouse.app.DropFolderWatcher;
+import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.config.DropFolderProperties;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DropFolderWatcherTest {
+
+    private final FxDealApp fxDealApp = mock(FxDealApp.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final DropFolderProperties properties = new DropFolderProperties();
+    private DropFolderWatcher watcher;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setDirectory(dir);
+        properties.setSettleTime(Duration.ofMillis(200));
+        watcher = new DropFolderWatcher(fxDealApp, properties, objectMapper);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        watcher.stop();
+    }
+
+    @Test
+    void droppedFile_ImportedAndMovedToDoneWithReport() throws Exception {
+        ImportSummary summary = ImportSummary.builder().importId("import-1").totalRecords(3).successfulImports(3).build();
+        when(fxDealApp.importFile(any(), any())).thenReturn(summary);
+        // already there before the watcher starts
+        Files.writeString(dir.resolve("early.csv"), "header\n");
+        watcher.start();
+
+        Files.writeString(dir.resolve("eod.csv"), "header\n");
+        Files.writeString(dir.resolve("eod.csv.part"), "still being written\n");
+
+        JsonNode report = awaitReport(dir.resolve("done/eod.csv.summary.json"));
+        assertTrue(Files.exists(dir.resolve("done/eod.csv")));
+        assertEquals("COMPLETED", report.get("status").asText());
+        assertEquals(3, report.get("summary").get("successfulImports").asInt());
+        awaitReport(dir.resolve("done/early.csv.summary.json"));
+        verify(fxDealApp).importFile(eq(dir.resolve("eod.csv")), any());
+        verify(fxDealApp, never()).importFile(eq(dir.resolve("eod.csv.part")), any());
+        assertTrue(Files.exists(dir.resolve("eod.csv.part")));
+    }
+
+    @Test
+    void importThrows_MovedToFailedWithError() throws Exception {
+        when(fxDealApp.importFile(any(), any())).thenThrow(new IllegalStateException("database down"));
+        watcher.start();
+
+        Files.writeString(dir.resolve("eod.csv"), "header\n");
+
+        JsonNode report = awaitReport(dir.resolve("failed/eod.csv.summary.json"));
+        assertTrue(Files.exists(dir.resolve("failed/eod.csv")));
+        assertFalse(Files.exists(dir.resolve("eod.csv")));
+        assertEquals("FAILED", report.get("status").asText());
+        assertEquals("database down", report.get("error").asText());
+    }
+
+    private JsonNode awaitReport(Path report) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+        while (!Files.exists(report) || !Files.exists(report.resolveSibling(
+                report.getFileName().toString().replace(".summary.json", "")))) {
+            assertTrue(System.nanoTime() < deadline, "no report at " + report);
+            Thread.sleep(50);
+        }
+        return objectMapper.readTree(report.toFile());
+    }
+}
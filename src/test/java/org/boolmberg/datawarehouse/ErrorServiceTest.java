@@ -0,0 +1,122 @@
+package org.boolmberg.datawarehouse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.metrics.ImportMetrics;
+import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.boolmberg.datawarehouse.service.ErrorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ErrorServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ImportProperties importProperties = new ImportProperties();
+    private final List<List<Object[]>> batches = new CopyOnWriteArrayList<>();
+    private ErrorService errorService;
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(errorService, "stop");
+    }
+
+    @Test
+    void flush_WritesQueuedErrorsInBatches() {
+        start(100, 2);
+        for (int row = 1; row <= 5; row++) {
+            errorService.addImportError("import-1", row, "DEAL-" + row, "Invalid", ImportErrorType.VALIDATION);
+        }
+
+        errorService.flush("import-1");
+
+        assertEquals(5, batches.stream().mapToInt(List::size).sum());
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 2));
+        Object[] first = batches.get(0).get(0);
+        assertArrayEquals(new Object[]{"import-1", 1, "DEAL-1", "Invalid", "VALIDATION"}, first);
+    }
+
+    @Test
+    void addImportError_QueueFull_BlocksUntilWriterCatchesUp() throws Exception {
+        start(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            release.await();
+            batches.add(List.copyOf(inv.<List<Object[]>>getArgument(1)));
+            return new int[0];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+
+        Thread producer = Thread.ofVirtual().start(() -> {
+            for (int row = 1; row <= 4; row++) {
+                errorService.addImportError("import-1", row, "DEAL-" + row, "Duplicate", ImportErrorType.DUPLICATE);
+            }
+        });
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(producer.isAlive());
+        errorService.flush("import-1");
+        assertEquals(4, batches.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void flush_WriteFailed_ThrowsForTheImportThatLostErrorsOnly() {
+        start(100, 10);
+        doThrow(new DataAccessResourceFailureException("down")).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+        errorService.addImportError("import-1", 1, "DEAL-1", "Invalid", ImportErrorType.VALIDATION);
+        errorService.flush("import-2");
+
+        assertThrows(IllegalStateException.class, () -> errorService.flush("import-1"));
+        // the failure is reported once, later imports start clean
+        errorService.flush("import-1");
+    }
+
+    @Test
+    void addImportError_NoMessage_WrittenWithItsType() {
+        start(100, 10);
+        errorService.addImportError("import-1", 1, "DEAL-1", null, ImportErrorType.UNKNOWN);
+        errorService.addImportError("import-2", 2, "DEAL-2", "Invalid", ImportErrorType.VALIDATION);
+
+        errorService.flush("import-1");
+        errorService.flush("import-2");
+
+        assertArrayEquals(new Object[]{"import-1", 1, "DEAL-1", "UNKNOWN", "UNKNOWN"}, batches.get(0).get(0));
+    }
+
+    @Test
+    void flush_WriterGone_FailsInsteadOfWaiting() throws Exception {
+        start(1, 1);
+        Thread writer = (Thread) ReflectionTestUtils.getField(errorService, "writer");
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertThrows(IllegalStateException.class, () -> errorService.flush("import-1"));
+        assertThrows(IllegalStateException.class, () ->
+                errorService.addImportError("import-1", 1, "DEAL-1", "Invalid", ImportErrorType.VALIDATION));
+    }
+
+    private void start(int queueCapacity, int batchSize) {
+        importProperties.getErrors().setQueueCapacity(queueCapacity);
+        importProperties.getErrors().setBatchSize(batchSize);
+        doAnswer(inv -> {
+            batches.add(List.copyOf(inv.<List<Object[]>>getArgument(1)));
+            return new int[0];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+        errorService = new ErrorService(jdbcTemplate, importProperties, new ImportMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.invokeMethod(errorService, "start");
+    }
+}
@@ -0,0 +1,137 @@
+package org.boolmberg.datawarehouse;
+
+import org.boolmberg.datawarehouse.dto.ChunkCheckpoint;
+import org.boolmberg.datawarehouse.dto.FileImport;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.exception.ImportInProgressException;
+import org.boolmberg.datawarehouse.service.FileImportService;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.boolmberg.datawarehouse.TestDeals.deal;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class FileImportServiceTest {
+
+    @Autowired
+    private FileImportService fileImportService;
+    @Autowired
+    private FxDealService fxDealService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void begin_FailedImport_ResumesAfterLastCommittedChunk() {
+        String checksum = UUID.randomUUID().toString();
+        FileImport first = fileImportService.begin(checksum, "", "deals.csv", false);
+        assertEquals(0, first.getLastRow());
+        assertThrows(ImportInProgressException.class, () -> fileImportService.begin(checksum, "", "deals.csv", false));
+
+        // the deals and the checkpoint commit together
+        fxDealService.importDeals(List.of(deal("CKPT-" + UUID.randomUUID()), deal("CKPT-" + UUID.randomUUID())), ChunkCheckpoint.builder()
+                .fileImportId(first.getId())
+                .lastRow(3)
+                .duplicates(1)
+                .build());
+        fileImportService.fail(first.getId());
+
+        FileImport resumed = fileImportService.begin(checksum, "", "deals.csv", false);
+        assertEquals(first.getImportId(), resumed.getImportId());
+        assertEquals(3, resumed.getLastRow());
+        assertEquals(2, resumed.getImported());
+        assertEquals(1, resumed.getDuplicates());
+    }
+
+    @Test
+    void begin_CompletedFile_StoredSummaryUnlessForced() {
+        String checksum = UUID.randomUUID().toString();
+        FileImport first = fileImportService.begin(checksum, "", "deals.csv", false);
+        ImportSummary summary = ImportSummary.builder()
+                .importId(first.getImportId())
+                .totalRecords(3)
+                .successfulImports(2)
+                .failedImports(1)
+                .build();
+        summary.addError(ImportSummary.ImportErrorDto.builder()
+                .rowNumber(3).dealId("BAD").errorMessage("Invalid currency").errorType("VALIDATION").build());
+        fileImportService.complete(first.getId(), summary);
+
+        FileImport repeat = fileImportService.begin(checksum, "", "deals.csv", false);
+        assertEquals(first.getImportId(), repeat.getSummary().getImportId());
+        assertEquals(2, repeat.getSummary().getSuccessfulImports());
+        assertEquals(1, repeat.getSummary().getFailedImports());
+        // only the counts are stored, the errors are in import_errors under the importId
+        assertTrue(repeat.getSummary().getErrors().isEmpty());
+        assertTrue(repeat.getSummary().getAlreadyImported());
+
+        FileImport forced = fileImportService.begin(checksum, "", "deals.csv", true);
+        assertNull(forced.getSummary());
+        assertNotEquals(first.getImportId(), forced.getImportId());
+        assertEquals(0, forced.getLastRow());
+    }
+
+    @Test
+    void begin_RunningImportWentQuiet_Resumed() {
+        String checksum = UUID.randomUUID().toString();
+        FileImport first = fileImportService.begin(checksum, "eod/a.csv", "eod/a.csv", false);
+        fileImportService.advance(ChunkCheckpoint.builder().fileImportId(first.getId()).lastRow(1000).failed(4).build());
+        // another zip entry of the same archive is an import of its own
+        assertNotEquals(first.getId(), fileImportService.begin(checksum, "eod/b.csv", "eod/b.csv", false).getId());
+
+        jdbcTemplate.update("UPDATE file_imports SET updated_at = ? WHERE id = ?",
+                LocalDateTime.now().minusHours(1), first.getId());
+
+        FileImport resumed = fileImportService.begin(checksum, "eod/a.csv", "eod/a.csv", false);
+        assertEquals(first.getId(), resumed.getId());
+        assertEquals(1000, resumed.getLastRow());
+        assertEquals(4, resumed.getFailed());
+    }
+
+    @Test
+    void advance_ChunkErrors_CommitWithTheCheckpoint() {
+        String checksum = UUID.randomUUID().toString();
+        FileImport fileImport = fileImportService.begin(checksum, "", "deals.csv", false);
+        FxDealDTO deal = deal("CKPT-" + UUID.randomUUID());
+        ChunkCheckpoint first = ChunkCheckpoint.builder()
+                .fileImportId(fileImport.getId())
+                .importId(fileImport.getImportId())
+                .lastRow(2)
+                .failed(1)
+                .build();
+        first.getErrors().add(ImportSummary.ImportErrorDto.builder()
+                .rowNumber(2).dealId("BAD").errorMessage("Invalid currency").errorType("VALIDATION").build());
+        fxDealService.importDeals(List.of(deal), first);
+        assertEquals(1, errorCount(fileImport.getImportId()));
+
+        // the second chunk fails: neither its errors nor its checkpoint are written
+        ChunkCheckpoint second = ChunkCheckpoint.builder()
+                .fileImportId(fileImport.getId())
+                .importId(fileImport.getImportId())
+                .lastRow(4)
+                .failed(1)
+                .build();
+        second.getErrors().add(ImportSummary.ImportErrorDto.builder()
+                .rowNumber(4).dealId("BAD").errorMessage("Invalid currency").errorType("VALIDATION").build());
+        assertThrows(RuntimeException.class, () -> fxDealService.importDeals(List.of(deal), second));
+        assertEquals(1, errorCount(fileImport.getImportId()));
+
+        fileImportService.fail(fileImport.getId());
+        assertEquals(2, fileImportService.begin(checksum, "", "deals.csv", false).getLastRow());
+    }
+
+    private int errorCount(String importId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM import_errors WHERE import_id = ?",
+                Integer.class, importId);
+    }
+}
@@ -0,0 +1,298 @@
+package org.boolmberg.datawarehouse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.exception.InvalidFileException;
+import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileUtilsTest {
+
+    private static final String CSV = """
+            dealUniqueId,fromCurrency,toCurrency,dealTimestamp,dealAmount,exchangerate
+            DEAL-001,usd,EUR,2024-01-15T10:30:00,10000.50,0.81832
+
+            DEAL-002,GBP,USD,2024-01-15 11:45:00,25000.75,1.92
+            DEAL-003,EUR,JPY,not-a-date,50000.00,0.123392
+            DEAL-004,USD,CHF,2024/01/16 09:15:00,15000.25,1.29833
+            """;
+
+    @Test
+    void streamFile_SkipsHeaderAndEmptyRows() {
+        List<FxDealDTO> deals = new ArrayList<>();
+
+        int count = FileUtils.streamFile(csv(CSV), deals::add);
+
+        assertEquals(4, count);
+        assertEquals(4, deals.size());
+        assertEquals("DEAL-001", deals.get(0).getDealId());
+        assertEquals("USD", deals.get(0).getCurrencyFrom());
+        assertEquals(new BigDecimal("10000.50"), deals.get(0).getDealAmount());
+        assertEquals(LocalDateTime.of(2024, 1, 15, 11, 45), deals.get(1).getDealTimestamp());
+        assertEquals(LocalDateTime.of(2024, 1, 16, 9, 15), deals.get(3).getDealTimestamp());
+    }
+
+    @Test
+    void streamFile_UnparseableRow_KeepsDealIdOnly() {
+        List<FxDealDTO> deals = new ArrayList<>();
+
+        FileUtils.streamFile(csv(CSV), deals::add);
+
+        FxDealDTO broken = deals.get(2);
+        assertEquals("DEAL-003", broken.getDealId());
+        assertNull(broken.getCurrencyFrom());
+        assertNull(broken.getDealTimestamp());
+    }
+
+    @Test
+    void pareFile_MatchesStreamedRows() {
+        List<FxDealDTO> streamed = new ArrayList<>();
+        List<FxDealDTO> parsed = new ArrayList<>();
+
+        FileUtils.streamFile(csv(CSV), streamed::add);
+        FileUtils.pareFile(csv(CSV), parsed);
+
+        assertEquals(streamed, parsed);
+    }
+
+    @Test
+    void writeCsvRow_RoundTripsThroughStreamCsv() throws Exception {
+        FxDealDTO deal = FxDealDTO.builder()
+                .dealId("DEAL,\"7\"")
+                .currencyFrom("USD")
+                .currencyTo("EUR")
+                .dealTimestamp(LocalDateTime.of(2024, 1, 15, 10, 30))
+                .dealAmount(new BigDecimal("10000.5000"))
+                .exchangeRate(0.81832)
+                .build();
+        StringWriter out = new StringWriter();
+        out.write(FileUtils.CSV_HEADER + "\n");
+        FileUtils.writeCsvRow(out, deal);
+
+        List<FxDealDTO> parsed = new ArrayList<>();
+        FileUtils.streamCsv(new ByteArrayInputStream(out.toString().getBytes(StandardCharsets.UTF_8)), parsed::add);
+
+        assertTrue(out.toString().endsWith("\"DEAL,\"\"7\"\"\",USD,EUR,2024-01-15T10:30:00,10000.5000,0.81832\n"));
+        assertEquals(List.of(deal), parsed);
+    }
+
+    @Test
+    void streamFile_Gzip_InflatedWhileRead() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(CSV.getBytes(StandardCharsets.UTF_8));
+        }
+        List<FxDealDTO> deals = new ArrayList<>();
+
+        int count = FileUtils.streamFile(new MockMultipartFile("file", "deals.csv.gz", "application/gzip",
+                gzipped.toByteArray()), deals::add);
+
+        assertEquals(4, count);
+        assertEquals(streamCsv(CSV), deals);
+    }
+
+    @Test
+    void streamCsv_Gzip_CallerStreamLeftOpen() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(CSV.getBytes(StandardCharsets.UTF_8));
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayInputStream body = new ByteArrayInputStream(gzipped.toByteArray()) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        assertEquals(4, FileUtils.streamCsv(body, deal -> { }));
+        // the inflater is released, the stream stays with its owner
+        assertFalse(closed.get());
+    }
+
+    @Test
+    void streamCsv_ZipArchive_Rejected() throws Exception {
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(zipped)) {
+            zip.putNextEntry(new ZipEntry("deals.csv"));
+            zip.write(CSV.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(FileUtils.Compression.ZIP, FileUtils.detectCompression(
+                new MockMultipartFile("file", "deals.zip", "application/zip", zipped.toByteArray())));
+        assertThrows(InvalidFileException.class,
+                () -> FileUtils.streamCsv(new ByteArrayInputStream(zipped.toByteArray()), deal -> fail("no rows expected")));
+    }
+
+    @Test
+    void streamJson_MalformedRecord_ReportsLine() {
+        String ndjson = """
+                {"dealId":"JSON-1","currencyFrom":"USD"}
+                {"dealId":"JSON-2","currencyFrom":
+                """;
+        List<Integer> rows = new ArrayList<>();
+
+        InvalidFileException e = assertThrows(InvalidFileException.class, () -> FileUtils.streamJson(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), new ObjectMapper(),
+                new FileUtils.RowSink() {
+                    @Override
+                    public void accept(int rowNumber, FxDealDTO deal) {
+                        rows.add(rowNumber);
+                    }
+
+                    @Override
+                    public void reject(int rowNumber, String dealId, String message) {
+                        fail("no rejections expected");
+                    }
+                }));
+
+        assertEquals(List.of(1), rows);
+        assertTrue(e.getMessage().startsWith("Malformed JSON at line 3"), e.getMessage());
+    }
+
+    @Test
+    void streamFile_EmptyFile_Throws() {
+        assertThrows(InvalidFileException.class,
+                () -> FileUtils.streamFile(csv(""), deal -> fail("no rows expected")));
+    }
+
+    @Test
+    void streamFile_HeaderOnly_ReturnsZero() {
+        assertEquals(0, FileUtils.streamFile(csv("dealUniqueId,fromCurrency\n"), deal -> fail("no rows expected")));
+    }
+
+    @Test
+    void streamCsv_QuotedCellsAndLineEndings() {
+        String csv = "dealUniqueId,fromCurrency,toCurrency,dealTimestamp,dealAmount,exchangerate\r\n"
+                + "\"DEAL,\"\"1\"\"\", gbp ,\"USD\",2024-01-15T10:30:00,\"1500\",1.25\r\n"
+                + "  ,  , \r"
+                + "\"DEAL\n2\",EUR,USD, 2024-01-15T10:30 ,+7.50,1e-1\r\n"
+                + "DEAL-3,EUR,USD,2024-01-15T10:30:00.25,-0.0001,2";
+
+        List<FxDealDTO> deals = streamCsv(csv);
+
+        assertEquals(3, deals.size());
+        assertEquals("DEAL,\"1\"", deals.get(0).getDealId());
+        assertEquals("GBP", deals.get(0).getCurrencyFrom());
+        assertEquals(new BigDecimal("1500"), deals.get(0).getDealAmount());
+        assertEquals("DEAL\n2", deals.get(1).getDealId());
+        assertEquals(LocalDateTime.of(2024, 1, 15, 10, 30), deals.get(1).getDealTimestamp());
+        assertEquals(new BigDecimal("7.50"), deals.get(1).getDealAmount());
+        assertEquals(0.1, deals.get(1).getExchangeRate());
+        assertEquals(LocalDateTime.of(2024, 1, 15, 10, 30, 0, 250_000_000), deals.get(2).getDealTimestamp());
+        assertEquals(new BigDecimal("-0.0001"), deals.get(2).getDealAmount());
+    }
+
+    @Test
+    void streamCsv_TimestampsParsedLikeFormatters() {
+        String[] timestamps = {"2024-02-30T10:00:00", "2023-02-29 23:59:59", "2024/04/31 00:00:00",
+                "2024-02-30T10:00", "2024-01-15T10:30:00.123456789", "2024-01-15T10:30:00.", "2024/01/15T10:30:00",
+                "12024-01-15T10:30:00", "2024-1-15 10:30:00", "2024-13-45 25:61", "2024-01-15 24:00:00"};
+        StringBuilder csv = new StringBuilder(FileUtils.CSV_HEADER).append('\n');
+        for (String timestamp : timestamps) {
+            csv.append("DEAL,USD,EUR,").append(timestamp).append(",1,1\n");
+        }
+
+        List<FxDealDTO> deals = streamCsv(csv.toString());
+
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(formatterResult(timestamps[i]), deals.get(i).getDealTimestamp(), timestamps[i]);
+        }
+    }
+
+    @Test
+    void streamCsv_RecordsAcrossBufferRefills() {
+        StringBuilder csv = new StringBuilder(FileUtils.CSV_HEADER).append('\n');
+        for (int i = 0; i < 5_000; i++) {
+            csv.append("DEAL-").append(i).append(",USD,EUR,2024-01-15 10:30:00,").append(i).append(".25,1.1\n");
+        }
+        // a single record longer than the buffer
+        csv.append("DEAL-").append("x".repeat(100_000)).append(",USD,EUR,2024-01-15 10:30:00,1,1.1\n");
+
+        List<FxDealDTO> deals = streamCsv(csv.toString());
+
+        assertEquals(5_001, deals.size());
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals("DEAL-" + i, deals.get(i).getDealId());
+            assertEquals(new BigDecimal(i + ".25"), deals.get(i).getDealAmount());
+        }
+        assertEquals(100_005, deals.get(5_000).getDealId().length());
+    }
+
+    @Test
+    void streamFile_ParallelParts_SameDealsInFileOrder(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder(FileUtils.CSV_HEADER).append("\r\n");
+        for (int i = 0; i < 2_000; i++) {
+            String id = i % 7 == 0 ? "\"DEAL\n" + i + "\"" : i % 11 == 0 ? "\"DEAL,\"\"" + i + "\"" : "DEAL-" + i;
+            csv.append(id).append(",USD,EUR,2024-01-15 10:30:00,").append(i).append(".5,1.1")
+                    .append(i % 13 == 0 ? "\r\n\n" : "\r\n");
+        }
+        Path file = Files.writeString(dir.resolve("deals.csv"), csv);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<FxDealDTO> parallel = new ArrayList<>();
+            int count = FileUtils.streamFile(file, 1_000, pool, 4, parallel::add);
+
+            assertEquals(2_000, count);
+            assertEquals(streamCsv(csv.toString()), parallel);
+            assertEquals("DEAL\n7", parallel.get(7).getDealId());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void streamFile_EmptyFile_ReturnsZero(@TempDir Path dir) throws Exception {
+        Path file = Files.createFile(dir.resolve("empty.csv"));
+
+        assertEquals(0, FileUtils.streamFile(file, 1_000, Runnable::run, 1, deal -> fail("no rows expected")));
+    }
+
+    private static List<FxDealDTO> streamCsv(String csv) {
+        List<FxDealDTO> deals = new ArrayList<>();
+        FileUtils.streamCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), deals::add);
+        return deals;
+    }
+
+    // what the formatters FileUtils used to try in turn make of the value, null if none accepts it
+    private static LocalDateTime formatterResult(String timestamp) {
+        for (String pattern : new String[]{"yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy/MM/dd HH:mm:ss"}) {
+            try {
+                return LocalDateTime.parse(timestamp, DateTimeFormatter.ofPattern(pattern));
+            } catch (DateTimeParseException e) {
+                // next one
+            }
+        }
+        try {
+            return LocalDateTime.parse(timestamp, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private MockMultipartFile csv(String content) {
+        return new MockMultipartFile("file", "deals.csv", "text/csv", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,30 +1,63 @@
 package org.boolmberg.datawarehouse;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.boolmberg.datawarehouse.app.AdmissionControl;
 import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.app.ImportProgress;
+import org.boolmberg.datawarehouse.config.AdmissionProperties;
+import org.boolmberg.datawarehouse.config.ImportMode;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.DealCursor;
+import org.boolmberg.datawarehouse.dto.DealPage;
+import org.boolmberg.datawarehouse.dto.FileImport;
 import org.boolmberg.datawarehouse.dto.FxDealDTO;
 import org.boolmberg.datawarehouse.dto.ImportSummary;
 import org.boolmberg.datawarehouse.exception.DuplicateDealException;
+import org.boolmberg.datawarehouse.exception.FxDealNotFoundException;
 import org.boolmberg.datawarehouse.exception.ValidationException;
+import org.boolmberg.datawarehouse.metrics.ImportMetrics;
 import org.boolmberg.datawarehouse.model.FxDeal;
 import org.boolmberg.datawarehouse.model.ImportErrorType;
+import org.boolmberg.datawarehouse.service.DealCache;
 import org.boolmberg.datawarehouse.service.ErrorService;
+import org.boolmberg.datawarehouse.service.FileImportService;
+import org.boolmberg.datawarehouse.service.FxDealCopyService;
 import org.boolmberg.datawarehouse.service.FxDealService;
 import org.boolmberg.datawarehouse.utils.FileUtils;
+import org.boolmberg.datawarehouse.validator.FxDealValidator;
+import org.boolmberg.datawarehouse.validator.ValidationError;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.boolmberg.datawarehouse.TestDeals.deal;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -36,9 +69,35 @@ class FxDealAppTest {
     @Mock
     private FxDealService fxDealService;
 
+    @Mock
+    private FxDealCopyService fxDealCopyService;
+
     @Mock
     private ErrorService errorService;
 
+    @Mock
+    private FxDealValidator validator;
+
+    @Mock
+    private DealCache dealCache;
+
+    @Mock
+    private FileImportService fileImportService;
+
+    @Spy
+    private ImportProperties importProperties = new ImportProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ImportMetrics importMetrics = new ImportMetrics(meterRegistry);
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private AdmissionControl admissionControl = new AdmissionControl(new AdmissionProperties(), meterRegistry, null);
+
     @InjectMocks
     private FxDealApp fxDealApp;
 
@@ -94,36 +153,36 @@ class FxDealAppTest {
     @Test
     void importDeals_AllValid_ReturnsAllSuccessful() {
         List<FxDealDTO> deals = Arrays.asList(
-                createDeal("DEAL-001"),
-                createDeal("DEAL-002"),
-                createDeal("DEAL-003")
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
         );
 
-        when(fxDealService.importDeal(any(FxDealDTO.class)))
+        when(fxDealService.importValidatedDeal(any(FxDealDTO.class)))
                 .thenReturn(new FxDeal());
 
         ImportSummary result = fxDealApp.importDeals(deals);
 
         assertEquals(3, result.getSuccessfulImports());
         assertTrue(result.getErrors().isEmpty());
-        verify(fxDealService, times(3)).importDeal(any());
+        verify(fxDealService, times(3)).importValidatedDeal(any());
     }
 
     @Test
     void importDeals_OneValidationFailure_ReturnsPartialSuccess() {
         List<FxDealDTO> deals = Arrays.asList(
-                createDeal("DEAL-001"),
-                createDeal("DEAL-002"),
-                createDeal("DEAL-003")
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
         );
 
-        when(fxDealService.importDeal(argThat(dto ->
+        when(fxDealService.importValidatedDeal(argThat(dto ->
                 dto.getDealId().equals("DEAL-001") || dto.getDealId().equals("DEAL-003")
         ))).thenReturn(new FxDeal());
 
-        doThrow(new ValidationException("Invalid currency"))
-                .when(fxDealService).importDeal(argThat(dto ->
-                        dto.getDealId().equals("DEAL-002")));
+        doAnswer(inv -> inv.<FxDealDTO>getArgument(0).getDealId().equals("DEAL-002")
+                ? ValidationError.TO_CURRENCY_UNKNOWN : null)
+                .when(validator).check(any(), any());
 
         ImportSummary result = fxDealApp.importDeals(deals);
 
@@ -131,53 +190,53 @@ class FxDealAppTest {
         assertEquals(1, result.getFailedImports());
         assertEquals("DEAL-002", result.getErrors().get(0).getDealId());
 
-        verify(errorService).addImportError(eq(2), eq("DEAL-002"), anyString(),
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"), anyString(),
                 eq(ImportErrorType.VALIDATION));
     }
 
     @Test
     void importDeals_OneDuplicate_ReturnsCorrectCounts() {
         List<FxDealDTO> deals = Arrays.asList(
-                createDeal("DEAL-001"),
-                createDeal("DEAL-002"),
-                createDeal("DEAL-003")
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
         );
 
-        when(fxDealService.importDeal(argThat(dto ->
+        when(fxDealService.importValidatedDeal(argThat(dto ->
                 dto.getDealId().equals("DEAL-001") || dto.getDealId().equals("DEAL-003")
         ))).thenReturn(new FxDeal());
 
         doThrow(new DuplicateDealException("Deal already exists"))
-                .when(fxDealService).importDeal(argThat(dto ->
+                .when(fxDealService).importValidatedDeal(argThat(dto ->
                         dto.getDealId().equals("DEAL-002")));
 
         ImportSummary result = fxDealApp.importDeals(deals);
 
         assertEquals(2, result.getSuccessfulImports());
         assertEquals(1, result.getDuplicateImports());
-        verify(errorService).addImportError(eq(2), eq("DEAL-002"), anyString(),
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"), anyString(),
                 eq(ImportErrorType.DUPLICATE));
     }
 
     @Test
     void importDeals_MixedErrors_ReturnsCorrectCounts() {
         List<FxDealDTO> deals = Arrays.asList(
-                createDeal("DEAL-001"), // success
-                createDeal("DEAL-002"), // validation
-                createDeal("DEAL-003"), // duplicate
-                createDeal("DEAL-004")  // success
+                deal("DEAL-001"), // success
+                deal("DEAL-002"), // validation
+                deal("DEAL-003"), // duplicate
+                deal("DEAL-004")  // success
         );
 
-        when(fxDealService.importDeal(argThat(dto ->
+        when(fxDealService.importValidatedDeal(argThat(dto ->
                 dto.getDealId().equals("DEAL-001") || dto.getDealId().equals("DEAL-004")
         ))).thenReturn(new FxDeal());
 
-        doThrow(new ValidationException("Invalid amount"))
-                .when(fxDealService).importDeal(argThat(dto ->
-                        dto.getDealId().equals("DEAL-002")));
+        doAnswer(inv -> inv.<FxDealDTO>getArgument(0).getDealId().equals("DEAL-002")
+                ? ValidationError.AMOUNT_NOT_POSITIVE : null)
+                .when(validator).check(any(), any());
 
         doThrow(new DuplicateDealException("Deal exists"))
-                .when(fxDealService).importDeal(argThat(dto ->
+                .when(fxDealService).importValidatedDeal(argThat(dto ->
                         dto.getDealId().equals("DEAL-003")));
 
         ImportSummary result = fxDealApp.importDeals(deals);
@@ -186,9 +245,36 @@ class FxDealAppTest {
         assertEquals(1, result.getFailedImports());
         assertEquals(1, result.getDuplicateImports());
 
-        verify(errorService).addImportError(eq(2), eq("DEAL-002"), anyString(),
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"), anyString(),
                 eq(ImportErrorType.VALIDATION));
-        verify(errorService).addImportError(eq(3), eq("DEAL-003"), anyString(),
+        verify(errorService).addImportError(anyString(), eq(3), eq("DEAL-003"), anyString(),
+                eq(ImportErrorType.DUPLICATE));
+    }
+
+    @Test
+    void importDeals_ExceptionWithoutMessage_FiledUnderItsClassName() {
+        doThrow(new IllegalStateException())
+                .when(fxDealService).importValidatedDeal(any());
+
+        ImportSummary result = fxDealApp.importDeals(List.of(deal("DEAL-001")));
+
+        assertEquals(1, result.getFailedImports());
+        verify(errorService).addImportError(anyString(), eq(1), eq("DEAL-001"),
+                eq("java.lang.IllegalStateException"), eq(ImportErrorType.UNKNOWN));
+    }
+
+    @Test
+    void importDeals_MoreErrorsThanSummaryLimit_AllWrittenFirstListed() {
+        importProperties.getErrors().setSummaryLimit(2);
+        doThrow(new DuplicateDealException("Deal already exists"))
+                .when(fxDealService).importValidatedDeal(any());
+
+        ImportSummary result = fxDealApp.importDeals(List.of(deal("A"), deal("B"), deal("C")));
+
+        assertEquals(3, result.getDuplicateImports());
+        assertEquals(List.of("A", "B"),
+                result.getErrors().stream().map(ImportSummary.ImportErrorDto::getDealId).toList());
+        verify(errorService, times(3)).addImportError(anyString(), anyInt(), anyString(), anyString(),
                 eq(ImportErrorType.DUPLICATE));
     }
 
@@ -197,45 +283,214 @@ class FxDealAppTest {
         ImportSummary result = fxDealApp.importDeals(List.of());
 
         assertEquals(0, result.getTotalRecords());
-        verify(fxDealService, never()).importDeal(any());
+        verify(fxDealService, never()).importValidatedDeal(any());
     }
 
     @Test
     void importDeals_AllFail_ReturnsAllFailures() {
         List<FxDealDTO> deals = Arrays.asList(
-                createDeal("A"),
-                createDeal("B")
+                deal("A"),
+                deal("B")
         );
 
-        doThrow(new ValidationException("Invalid"))
-                .when(fxDealService).importDeal(any());
+        when(validator.check(any(), any())).thenReturn(ValidationError.TO_CURRENCY_UNKNOWN);
 
         ImportSummary result = fxDealApp.importDeals(deals);
 
         assertEquals(2, result.getFailedImports());
     }
 
+    // ==================== importDeals (chunked) Tests ====================
+
+    @Test
+    void importDeals_Chunked_OneTransactionPerChunk() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        importProperties.setChunkSize(2);
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
+        );
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(3, result.getTotalRecords());
+        assertEquals(3, result.getSuccessfulImports());
+        verify(fxDealService, times(2)).importDeals(anyList());
+        verify(fxDealService, never()).importValidatedDeal(any());
+    }
+
+    @Test
+    void importDeals_Chunked_ValidationFailureIsNotSentToDatabase() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
+        );
+        doAnswer(inv -> inv.<FxDealDTO>getArgument(0).getDealId().equals("DEAL-002")
+                ? ValidationError.TO_CURRENCY_UNKNOWN : null)
+                .when(validator).check(any(), any());
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(1, result.getFailedImports());
+        verify(fxDealService).importDeals(argThat(chunk -> chunk.size() == 2));
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"),
+                eq("To currency 'EUR' is not a valid ISO 4217 currency code"), eq(ImportErrorType.VALIDATION));
+        verify(validator).maxDealTimestamp();
+        verify(validator, never()).validate(any());
+    }
+
+    @Test
+    void importDeals_Row_ValidationFailureIsNotSentToDatabase() {
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
+        );
+        doAnswer(inv -> inv.<FxDealDTO>getArgument(0).getDealId().equals("DEAL-002")
+                ? ValidationError.TO_CURRENCY_UNKNOWN : null)
+                .when(validator).check(any(), any());
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(1, result.getFailedImports());
+        verify(fxDealService, times(2)).importValidatedDeal(any());
+        verify(fxDealService, never()).importValidatedDeal(argThat(dto -> dto.getDealId().equals("DEAL-002")));
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"),
+                eq("To currency 'EUR' is not a valid ISO 4217 currency code"), eq(ImportErrorType.VALIDATION));
+        verify(validator).maxDealTimestamp();
+    }
+
+    @Test
+    void importDeals_Chunked_FailedChunkFallsBackRowByRow() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
+        );
+        doThrow(new RuntimeException("unique constraint violated"))
+                .when(fxDealService).importDeals(anyList());
+        when(fxDealService.importValidatedDeal(argThat(dto ->
+                dto.getDealId().equals("DEAL-001") || dto.getDealId().equals("DEAL-003")
+        ))).thenReturn(new FxDeal());
+        doThrow(new DuplicateDealException("Deal exists"))
+                .when(fxDealService).importValidatedDeal(argThat(dto ->
+                        dto.getDealId().equals("DEAL-002")));
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(1, result.getDuplicateImports());
+        verify(fxDealService, times(3)).importValidatedDeal(any());
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"), anyString(),
+                eq(ImportErrorType.DUPLICATE));
+    }
+
+    @Test
+    void importDeals_Chunked_DuplicatesFoundWithOneLookupPerChunk() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        importProperties.setChunkSize(2);
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-002"), // already in the database
+                deal("DEAL-003"),
+                deal("DEAL-001")  // repeated from the first chunk
+        );
+        when(fxDealService.findExistingDealIds(anyCollection()))
+                .thenAnswer(inv -> inv.<Collection<String>>getArgument(0).contains("DEAL-002")
+                        ? Set.of("DEAL-002") : Set.of());
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(2, result.getDuplicateImports());
+        assertEquals(List.of(2, 4), result.getErrors().stream().map(ImportSummary.ImportErrorDto::getRowNumber).toList());
+        verify(fxDealService, times(2)).findExistingDealIds(anyCollection());
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"), anyString(), eq(ImportErrorType.DUPLICATE));
+        verify(errorService).addImportError(anyString(), eq(4), eq("DEAL-001"), anyString(), eq(ImportErrorType.DUPLICATE));
+        verify(fxDealService, never()).importValidatedDeal(any());
+    }
+
+    @Test
+    void importDeals_Chunked_RepeatInsideChunkNeverReachesDatabase() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-001"),
+                deal("DEAL-002")
+        );
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(1, result.getDuplicateImports());
+        verify(fxDealService).findExistingDealIds(argThat(ids -> ids.size() == 2));
+        verify(fxDealService).importDeals(argThat(chunk -> chunk.size() == 2));
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-001"), anyString(), eq(ImportErrorType.DUPLICATE));
+    }
+
+    // ==================== importDeals (copy) Tests ====================
+
+    @Test
+    void importDeals_Copy_RowsNotInsertedAreDuplicates() {
+        importProperties.setMode(ImportMode.COPY);
+        List<FxDealDTO> deals = Arrays.asList(
+                deal("DEAL-001"),
+                deal("DEAL-002"),
+                deal("DEAL-003")
+        );
+        when(fxDealCopyService.isSupported()).thenReturn(true);
+        when(fxDealCopyService.copyDeals(anyList())).thenReturn(Set.of("DEAL-001", "DEAL-003"));
+
+        ImportSummary result = fxDealApp.importDeals(deals);
+
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(1, result.getDuplicateImports());
+        verify(errorService).addImportError(anyString(), eq(2), eq("DEAL-002"), anyString(), eq(ImportErrorType.DUPLICATE));
+        verify(fxDealService, never()).findExistingDealIds(anyCollection());
+        verify(fxDealService, never()).importDeals(anyList());
+    }
+
+    @Test
+    void importDeals_Copy_UnsupportedDatabaseFallsBackToChunked() {
+        importProperties.setMode(ImportMode.COPY);
+        when(fxDealCopyService.isSupported()).thenReturn(false);
+
+        ImportSummary result = fxDealApp.importDeals(List.of(deal("DEAL-001")));
+
+        assertEquals(1, result.getSuccessfulImports());
+        verify(fxDealService).importDeals(anyList());
+        verify(fxDealCopyService, never()).copyDeals(anyList());
+    }
+
     // ==================== uploadCsv Tests ====================
 
     @Test
     void uploadCsv_ValidFile_ParsesAndImportsDeals() {
         MultipartFile file = mock(MultipartFile.class);
-        List<FxDealDTO> parsed = Arrays.asList(createDeal("1"), createDeal("2"));
+        List<FxDealDTO> parsed = Arrays.asList(deal("1"), deal("2"));
 
         try (MockedStatic<FileUtils> mock = mockStatic(FileUtils.class)) {
-            mock.when(() -> FileUtils.pareFile(eq(file), anyList()))
+            mock.when(() -> FileUtils.fingerprint(file))
+                    .thenReturn(new FileUtils.Fingerprint(null, FileUtils.Compression.NONE));
+            mock.when(() -> FileUtils.streamFile(eq(file), any()))
                     .thenAnswer(inv -> {
-                        List<FxDealDTO> list = inv.getArgument(1);
-                        list.addAll(parsed);
-                        return null;
+                        Consumer<FxDealDTO> sink = inv.getArgument(1);
+                        parsed.forEach(sink);
+                        return parsed.size();
                     });
 
-            when(fxDealService.importDeal(any())).thenReturn(new FxDeal());
+            when(fxDealService.importValidatedDeal(any())).thenReturn(new FxDeal());
 
-            ImportSummary result = fxDealApp.uploadCsv(file);
+            ImportSummary result = fxDealApp.uploadCsv(file, false);
 
             assertEquals(2, result.getSuccessfulImports());
-            verify(fxDealService, times(2)).importDeal(any());
+            verify(fxDealService, times(2)).importValidatedDeal(any());
         }
     }
 
@@ -243,42 +498,354 @@ class FxDealAppTest {
     void uploadCsv_FileWithErrors_ReturnsPartialSuccess() {
         MultipartFile file = mock(MultipartFile.class);
         List<FxDealDTO> parsed = Arrays.asList(
-                createDeal("1"),
-                createDeal("2"),
-                createDeal("3")
+                deal("1"),
+                deal("2"),
+                deal("3")
         );
 
         try (MockedStatic<FileUtils> mock = mockStatic(FileUtils.class)) {
-            mock.when(() -> FileUtils.pareFile(eq(file), anyList()))
+            mock.when(() -> FileUtils.fingerprint(file))
+                    .thenReturn(new FileUtils.Fingerprint(null, FileUtils.Compression.NONE));
+            mock.when(() -> FileUtils.streamFile(eq(file), any()))
                     .thenAnswer(inv -> {
-                        List<FxDealDTO> list = inv.getArgument(1);
-                        list.addAll(parsed);
-                        return null;
+                        Consumer<FxDealDTO> sink = inv.getArgument(1);
+                        parsed.forEach(sink);
+                        return parsed.size();
                     });
 
-            when(fxDealService.importDeal(argThat(d -> d.getDealId().equals("1") || d.getDealId().equals("3"))))
+            when(fxDealService.importValidatedDeal(argThat(d -> d.getDealId().equals("1") || d.getDealId().equals("3"))))
                     .thenReturn(new FxDeal());
 
-            doThrow(new ValidationException("Invalid"))
-                    .when(fxDealService).importDeal(argThat(d -> d.getDealId().equals("2")));
+            doAnswer(inv -> inv.<FxDealDTO>getArgument(0).getDealId().equals("2")
+                    ? ValidationError.TO_CURRENCY_UNKNOWN : null)
+                    .when(validator).check(any(), any());
 
-            ImportSummary result = fxDealApp.uploadCsv(file);
+            ImportSummary result = fxDealApp.uploadCsv(file, false);
 
             assertEquals(2, result.getSuccessfulImports());
             assertEquals(1, result.getFailedImports());
         }
     }
 
+    @Test
+    void uploadCsv_Zip_OneSummaryPerEntry() throws Exception {
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(zipped)) {
+            zip.putNextEntry(new ZipEntry("eod/"));
+            zip.putNextEntry(new ZipEntry("eod/a.csv"));
+            zip.write((FileUtils.CSV_HEADER + "\nZIP-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n"
+                    + "ZIP-2,USD,EUR,2024-01-15T10:31:00,200,0.9\n").getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("__MACOSX/eod/._a.csv"));
+            zip.write(1);
+            // a gzipped CSV inside the zip is inflated as well
+            zip.putNextEntry(new ZipEntry("eod/b.csv.gz"));
+            GZIPOutputStream gzip = new GZIPOutputStream(zip);
+            gzip.write((FileUtils.CSV_HEADER + "\nZIP-3,GBP,USD,2024-01-15T10:32:00,300,1.2\n").getBytes(StandardCharsets.UTF_8));
+            gzip.finish();
+        }
+        when(fxDealService.importValidatedDeal(any())).thenReturn(new FxDeal());
+
+        ImportSummary result = fxDealApp.uploadCsv(
+                new MockMultipartFile("file", "eod.zip", "application/zip", zipped.toByteArray()), false);
+
+        assertEquals(3, result.getTotalRecords());
+        assertEquals(3, result.getSuccessfulImports());
+        assertEquals(List.of("eod/a.csv", "eod/b.csv.gz"),
+                result.getEntries().stream().map(ImportSummary::getFileName).toList());
+        assertEquals(2, result.getEntries().get(0).getSuccessfulImports());
+        assertNotEquals(result.getEntries().get(0).getImportId(), result.getEntries().get(1).getImportId());
+    }
+
+    @Test
+    void uploadCsv_CheckpointedImport_ResumesAfterCommittedRows() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        importProperties.setChunkSize(2);
+        when(fileImportService.begin(anyString(), eq(""), eq("deals.csv"), eq(false))).thenReturn(FileImport.builder()
+                .id(7)
+                .importId("earlier-import")
+                .lastRow(2)
+                .imported(1)
+                .duplicates(1)
+                .build());
+        String csv = FileUtils.CSV_HEADER + "\n"
+                + "CKPT-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n"
+                + "CKPT-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n"
+                + "CKPT-3,USD,EUR,2024-01-15T10:31:00,200,0.9\n"
+                + "CKPT-4,USD,EUR,2024-01-15T10:32:00,300,0.9\n"
+                + "CKPT-5,USD,EUR,2024-01-15T10:33:00,400,0.9\n";
+
+        ImportSummary result = fxDealApp.uploadCsv(
+                new MockMultipartFile("file", "deals.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8)), false);
+
+        assertEquals("earlier-import", result.getImportId());
+        assertEquals(2, result.getResumedAfterRow());
+        assertEquals(5, result.getTotalRecords());
+        assertEquals(4, result.getSuccessfulImports());
+        assertEquals(1, result.getDuplicateImports());
+        verify(fxDealService).importDeals(argThat(deals -> deals.size() == 2), argThat(checkpoint ->
+                checkpoint.getFileImportId() == 7 && checkpoint.getLastRow() == 4 && checkpoint.getImported() == 2));
+        verify(fxDealService).importDeals(argThat(deals -> deals.size() == 1
+                && deals.get(0).getDealId().equals("CKPT-5")), argThat(checkpoint -> checkpoint.getLastRow() == 5));
+        verify(fileImportService).complete(eq(7L), argThat(summary -> summary.getTotalRecords() == 5));
+    }
+
+    @Test
+    void uploadCsv_CheckpointedRowImport_ResumesAfterCheckpointedRows() {
+        importProperties.setChunkSize(2);
+        when(fileImportService.begin(anyString(), eq(""), eq("deals.csv"), eq(false))).thenReturn(FileImport.builder()
+                .id(7)
+                .importId("earlier-import")
+                .lastRow(2)
+                .imported(2)
+                .build());
+        when(fxDealService.importValidatedDeal(argThat(dto -> !dto.getDealId().equals("ROW-4")))).thenReturn(new FxDeal());
+        doThrow(new DuplicateDealException("Deal already exists"))
+                .when(fxDealService).importValidatedDeal(argThat(dto -> dto.getDealId().equals("ROW-4")));
+        String csv = FileUtils.CSV_HEADER + "\n"
+                + "ROW-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n"
+                + "ROW-2,USD,EUR,2024-01-15T10:31:00,200,0.9\n"
+                + "ROW-3,USD,EUR,2024-01-15T10:32:00,300,0.9\n"
+                + "ROW-4,USD,EUR,2024-01-15T10:33:00,400,0.9\n"
+                + "ROW-5,USD,EUR,2024-01-15T10:34:00,500,0.9\n";
+
+        ImportSummary result = fxDealApp.uploadCsv(
+                new MockMultipartFile("file", "deals.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8)), false);
+
+        assertEquals(2, result.getResumedAfterRow());
+        assertEquals(5, result.getTotalRecords());
+        assertEquals(4, result.getSuccessfulImports());
+        assertEquals(1, result.getDuplicateImports());
+        verify(fxDealService, times(3)).importValidatedDeal(any());
+        verify(fxDealService, never()).importValidatedDeal(argThat(dto -> dto.getDealId().equals("ROW-1")));
+        verify(fxDealService, never()).importValidatedDeal(argThat(dto -> dto.getDealId().equals("ROW-2")));
+        // rows 3 and 4 fill a chunk size, row 5 is summed up by complete()
+        verify(fileImportService).advance(argThat(checkpoint -> checkpoint.getFileImportId() == 7
+                && checkpoint.getLastRow() == 4 && checkpoint.getImported() == 1 && checkpoint.getDuplicates() == 1));
+        verify(fileImportService, times(1)).advance(any());
+        verify(fileImportService).complete(eq(7L), argThat(summary -> summary.getTotalRecords() == 5));
+        // the duplicate of row 4 is written before the checkpoint moves past it
+        InOrder order = inOrder(errorService, fileImportService);
+        order.verify(errorService).addImportError(eq("earlier-import"), eq(4), eq("ROW-4"), anyString(),
+                eq(ImportErrorType.DUPLICATE));
+        order.verify(errorService).flush("earlier-import");
+        order.verify(fileImportService).advance(any());
+    }
+
+    @Test
+    void uploadCsv_ImportedBefore_StoredSummaryWithoutRowWork() {
+        ImportSummary stored = ImportSummary.builder()
+                .importId("earlier-import")
+                .totalRecords(2)
+                .successfulImports(2)
+                .alreadyImported(true)
+                .build();
+        when(fileImportService.begin(anyString(), eq(""), eq("deals.csv"), eq(false)))
+                .thenReturn(FileImport.builder().id(7).importId("earlier-import").summary(stored).build());
+        String csv = FileUtils.CSV_HEADER + "\n"
+                + "SEEN-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n"
+                + "SEEN-2,USD,EUR,2024-01-15T10:31:00,200,0.9\n";
+
+        ImportSummary result = fxDealApp.uploadCsv(
+                new MockMultipartFile("file", "deals.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8)), false);
+
+        assertSame(stored, result);
+        verifyNoInteractions(fxDealService, errorService, validator);
+    }
+
+    @Test
+    void uploadCsv_RawBody_HashedBeforeAnyRowIsImported() {
+        byte[] csv = (FileUtils.CSV_HEADER + "\n"
+                + "BODY-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n").getBytes(StandardCharsets.UTF_8);
+        String checksum = FileUtils.checksum(() -> new ByteArrayInputStream(csv));
+        ImportSummary stored = ImportSummary.builder().importId("earlier-import").alreadyImported(true).build();
+        when(fileImportService.begin(checksum, "", null, false))
+                .thenReturn(FileImport.builder().id(7).importId("earlier-import").summary(stored).build());
+        when(fileImportService.begin(checksum, "", null, true))
+                .thenReturn(FileImport.builder().id(7).importId("forced-import").build());
+        when(fxDealService.importValidatedDeal(any())).thenReturn(new FxDeal());
+
+        assertSame(stored, fxDealApp.uploadCsv(new ByteArrayInputStream(csv), false, new ImportProgress()));
+        verifyNoInteractions(fxDealService);
+
+        ImportSummary forced = fxDealApp.uploadCsv(new ByteArrayInputStream(csv), true, new ImportProgress());
+        assertEquals("forced-import", forced.getImportId());
+        assertEquals(1, forced.getSuccessfulImports());
+        verify(fileImportService).complete(eq(7L), any());
+    }
+
+    @Test
+    void uploadCsv_TrackedZip_ArchiveKeptFreshAfterEveryEntry() throws Exception {
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(zipped)) {
+            zip.putNextEntry(new ZipEntry("a.csv"));
+            zip.write((FileUtils.CSV_HEADER + "\nZIP-1,USD,EUR,2024-01-15T10:30:00,100,0.9\n").getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("b.csv"));
+            zip.write((FileUtils.CSV_HEADER + "\nZIP-2,USD,EUR,2024-01-15T10:31:00,200,0.9\n").getBytes(StandardCharsets.UTF_8));
+        }
+        when(fileImportService.begin(anyString(), anyString(), any(), eq(false))).thenAnswer(inv -> FileImport.builder()
+                .id(inv.<String>getArgument(1).isEmpty() ? 1 : 2)
+                .importId(UUID.randomUUID().toString())
+                .build());
+        when(fxDealService.importValidatedDeal(any())).thenReturn(new FxDeal());
+
+        fxDealApp.uploadCsv(new MockMultipartFile("file", "eod.zip", "application/zip", zipped.toByteArray()), false);
+
+        verify(fileImportService, times(2)).touch(1L);
+        verify(fileImportService).complete(eq(1L), argThat(summary -> summary.getEntries().size() == 2));
+    }
+
+    @Test
+    void importJson_Ndjson_ErrorsReportedByLine() {
+        String ndjson = """
+                {"dealId":"JSON-1","currencyFrom":"USD","currencyTo":"EUR","dealTimestamp":"2024-01-15T10:30:00","dealAmount":100,"exchangeRate":0.9}
+
+                {"dealId":"JSON-2","currencyFrom":"USD","currencyTo":"EUR","dealTimestamp":"2024-01-15T10:31:00","dealAmount":"lots","exchangeRate":0.9}
+                42
+                {"dealId":"JSON-3","currencyFrom":"GBP","currencyTo":"USD",
+                 "dealTimestamp":"2024-01-15T10:32:00","dealAmount":300.25,"exchangeRate":1.2}
+                """;
+        when(fxDealService.importValidatedDeal(any())).thenReturn(new FxDeal());
+
+        ImportSummary result = fxDealApp.importJson(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(4, result.getTotalRecords());
+        assertEquals(2, result.getSuccessfulImports());
+        assertEquals(2, result.getFailedImports());
+        assertEquals(List.of(3, 4), result.getErrors().stream().map(ImportSummary.ImportErrorDto::getRowNumber).toList());
+        assertEquals("JSON-2", result.getErrors().get(0).getDealId());
+        assertTrue(result.getErrors().get(0).getErrorMessage().startsWith("Invalid dealAmount: "));
+        assertEquals("Row must be a JSON object", result.getErrors().get(1).getErrorMessage());
+        verify(fxDealService).importValidatedDeal(argThat(deal -> deal.getDealId().equals("JSON-3")
+                && deal.getDealAmount().compareTo(new BigDecimal("300.25")) == 0));
+        verify(fxDealService, never()).importValidatedDeal(argThat(deal -> deal.getDealId().equals("JSON-2")));
+    }
+
+    @Test
+    void importJson_ChunkedArray_RejectedElementNeverReachesDatabase() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        String json = """
+                [{"dealId":"JSON-1","currencyFrom":"USD","currencyTo":"EUR","dealTimestamp":"2024-01-15T10:30:00","dealAmount":100,"exchangeRate":0.9},
+                 {"dealId":"JSON-2","currencyFrom":"USD","currencyTo":"EUR","dealTimestamp":"yesterday","dealAmount":100,"exchangeRate":0.9},
+                 {"dealId":"JSON-3","currencyFrom":"USD","currencyTo":"EUR","dealTimestamp":"2024-01-15T10:32:00","dealAmount":100,"exchangeRate":0.9}]
+                """;
+
+        ImportSummary result = fxDealApp.importJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, result.getTotalRecords());
+        assertEquals(2, result.getSuccessfulImports());
+        verify(fxDealService).importDeals(argThat(chunk -> chunk.size() == 2
+                && chunk.stream().noneMatch(deal -> deal.getDealId().equals("JSON-2"))));
+        verify(errorService).addImportError(anyString(), eq(2), eq("JSON-2"),
+                startsWith("Invalid dealTimestamp: "), eq(ImportErrorType.VALIDATION));
+        verify(validator, times(2)).check(any(), any());
+    }
+
+    @Test
+    void importDeals_Chunked_RecordsOutcomesAndStages() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        importProperties.setChunkSize(2);
+        when(fxDealService.findExistingDealIds(anyCollection())).thenReturn(Set.of("DEAL-002"));
+        doAnswer(inv -> inv.<FxDealDTO>getArgument(0).getDealId().equals("DEAL-003")
+                ? ValidationError.AMOUNT_SCALE : null)
+                .when(validator).check(any(), any());
+
+        fxDealApp.importDeals(Arrays.asList(deal("DEAL-001"), deal("DEAL-002"), deal("DEAL-003")));
+
+        assertEquals(1, meterRegistry.get("fx.import.rows").tag("outcome", "success").counter().count());
+        assertEquals(1, meterRegistry.get("fx.import.rows").tag("outcome", "duplicate").counter().count());
+        assertEquals(1, meterRegistry.get("fx.import.rows").tag("outcome", "validation").counter().count());
+        assertEquals(2, meterRegistry.get("fx.import.stage").tag("stage", "validate").timer().count());
+        assertEquals(1, meterRegistry.get("fx.import.db.calls").tag("call", "lookup").counter().count());
+        assertEquals(0, meterRegistry.get("fx.import.in.flight").gauge().value());
+        assertEquals(1, meterRegistry.get("fx.import.duration").timer().count());
+    }
+
+    // ==================== getFxDealById Tests ====================
+
+    @Test
+    void getFxDealById_Found_ReadsThroughCache() {
+        FxDeal deal = entity(1L, LocalDateTime.of(2024, 1, 1, 10, 0));
+        when(fxDealService.findByDealId("DEAL-1")).thenReturn(Optional.of(deal));
+        when(dealCache.get(eq("DEAL-1"), any())).thenAnswer(inv ->
+                inv.<Function<String, FxDealDTO>>getArgument(1).apply("DEAL-1"));
+
+        FxDealDTO result = fxDealApp.getFxDealById("DEAL-1");
+
+        assertEquals("DEAL-1", result.getDealId());
+        assertEquals("EUR", result.getCurrencyFrom());
+    }
+
+    @Test
+    void getFxDealById_Unknown_Throws() {
+        when(dealCache.get(eq("DEAL-404"), any())).thenReturn(null);
+
+        assertThrows(FxDealNotFoundException.class, () -> fxDealApp.getFxDealById("DEAL-404"));
+    }
+
+    @Test
+    void importDeals_Chunked_ImportedDealsAreCached() {
+        importProperties.setMode(ImportMode.CHUNKED);
+        when(fxDealService.findExistingDealIds(anyCollection())).thenReturn(Set.of("DEAL-002"));
+
+        fxDealApp.importDeals(Arrays.asList(deal("DEAL-001"), deal("DEAL-002")));
+
+        verify(dealCache).put(argThat(deal -> deal.getDealId().equals("DEAL-001")));
+        verifyNoMoreInteractions(dealCache);
+    }
+
+    // ==================== findDeals Tests ====================
+
+    @Test
+    void findDeals_MoreThanOnePage_ReturnsCursorOfLastDeal() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 1, 1, 10, 0);
+        List<FxDeal> deals = List.of(entity(1L, timestamp), entity(2L, timestamp), entity(3L, timestamp));
+        when(fxDealService.findDeals("EUR", "USD", null, null, null, 3)).thenReturn(deals);
+
+        DealPage page = fxDealApp.findDeals("EURUSD", null, null, null, 2);
+
+        assertEquals(2, page.getDeals().size());
+        assertEquals(new DealCursor(timestamp, 2L), DealCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void findDeals_LastPage_HasNoCursor() {
+        DealCursor cursor = new DealCursor(LocalDateTime.of(2024, 1, 1, 10, 0), 7L);
+        when(fxDealService.findDeals(null, null, null, null, cursor, 101)).thenReturn(List.of());
+
+        DealPage page = fxDealApp.findDeals(null, null, null, cursor.encode(), null);
+
+        assertTrue(page.getDeals().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void findDeals_LimitIsCapped() {
+        when(fxDealService.findDeals(any(), any(), any(), any(), any(), anyInt())).thenReturn(List.of());
+
+        fxDealApp.findDeals(null, null, null, null, 1_000_000);
+
+        verify(fxDealService).findDeals(null, null, null, null, null, 1001);
+    }
+
+    @Test
+    void findDeals_InvalidArguments_Throws() {
+        assertThrows(ValidationException.class, () -> fxDealApp.findDeals("EUR", null, null, null, null));
+        assertThrows(ValidationException.class, () -> fxDealApp.findDeals(null, null, null, "not-a-cursor", null));
+        assertThrows(ValidationException.class, () -> fxDealApp.findDeals(null, null, null, null, 0));
+        verifyNoInteractions(fxDealService);
+    }
+
     // ==================== Helper ====================
 
-    private FxDealDTO createDeal(String id) {
-        return FxDealDTO.builder()
-                .dealId(id)
-                .currencyFrom("USD")
-                .currencyTo("EUR")
-                .dealAmount(new BigDecimal("10000"))
-                .exchangeRate(0.85)
-                .dealTimestamp(LocalDateTime.now())
+    private FxDeal entity(Long id, LocalDateTime timestamp) {
+        return FxDeal.builder()
+                .id(id)
+                .dealId("DEAL-" + id)
+                .currencyFrom("EUR")
+                .currencyTo("USD")
+                .dealAmount(new BigDecimal("100"))
+                .exchangeRate(1.1)
+                .dealTimestamp(timestamp)
                 .build();
     }
 }
@@ -0,0 +1,75 @@
+package org.boolmberg.datawarehouse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.boolmberg.datawarehouse.app.FxDealExportApp;
+import org.boolmberg.datawarehouse.dto.ExportFormat;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static org.boolmberg.datawarehouse.TestDeals.deal;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class FxDealExportAppTest {
+
+    private final FxDealService fxDealService = mock(FxDealService.class);
+    private final FxDealExportApp exportApp = new FxDealExportApp(fxDealService,
+            new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    @BeforeEach
+    void setUp() {
+        when(fxDealService.exportDeals(any())).thenAnswer(inv -> {
+            Consumer<FxDealDTO> sink = inv.getArgument(0);
+            sink.accept(deal("DEAL-1"));
+            sink.accept(deal("DEAL-2"));
+            return 2L;
+        });
+    }
+
+    @Test
+    void export_Csv_WritesUploadLayout() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportApp.export(ExportFormat.CSV, out);
+
+        assertEquals("""
+                dealUniqueId,fromCurrency,toCurrency,dealTimestamp,dealAmount,exchangerate
+                DEAL-1,USD,EUR,2024-01-15T10:30:00,100.25,0.85
+                DEAL-2,USD,EUR,2024-01-15T10:30:00,100.25,0.85
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void export_Ndjson_WritesOneObjectPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportApp.export(ExportFormat.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"dealId\":\"DEAL-1\""));
+        assertTrue(lines[1].contains("\"dealTimestamp\":\"2024-01-15T10:30:00\""));
+    }
+
+    @Test
+    void export_ClientGone_StopsWithIOException() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> exportApp.export(ExportFormat.CSV, broken));
+    }
+}
@@ -0,0 +1,124 @@
+package org.boolmberg.datawarehouse;
+
+import org.boolmberg.datawarehouse.dao.FxDealDao;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.exception.DuplicateDealException;
+import org.boolmberg.datawarehouse.model.FxDeal;
+import org.boolmberg.datawarehouse.service.DealIdLocks;
+import org.boolmberg.datawarehouse.service.DealStatsService;
+import org.boolmberg.datawarehouse.service.FileImportService;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.boolmberg.datawarehouse.service.RecentDealStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.boolmberg.datawarehouse.TestDeals.deal;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class FxDealServiceTest {
+
+    @Autowired
+    private FxDealService fxDealService;
+
+    @Test
+    void importDeal_Twice_SecondIsDuplicate() {
+        FxDealDTO deal = deal("ONCE-" + UUID.randomUUID());
+
+        FxDeal saved = fxDealService.importDeal(deal);
+
+        assertNotNull(saved.getId());
+        assertEquals(saved.getId(), fxDealService.findByDealId(deal.getDealId()).orElseThrow().getId());
+        assertThrows(DuplicateDealException.class, () -> fxDealService.importDeal(deal));
+    }
+
+    @Test
+    void importDeal_SameDealConcurrently_OneImportedRestDuplicates() throws Exception {
+        FxDealDTO deal = deal("RACE-" + UUID.randomUUID());
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<String>> outcomes = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                outcomes.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                        fxDealService.importDeal(deal);
+                        return "imported";
+                    } catch (DuplicateDealException e) {
+                        return "duplicate";
+                    } catch (Exception e) {
+                        return e.getClass().getSimpleName();
+                    }
+                }, executor));
+            }
+            start.countDown();
+            CompletableFuture.allOf(outcomes.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<String> results = outcomes.stream().map(CompletableFuture::join).toList();
+        assertEquals(1, results.stream().filter("imported"::equals).count(), results.toString());
+        assertEquals(threads - 1, results.stream().filter("duplicate"::equals).count(), results.toString());
+    }
+
+    @Test
+    void importDeal_Postgres_OneStatementPerDeal() {
+        JdbcTemplate jdbcTemplate = postgres(1L, 51L);
+        FxDealService service = service(jdbcTemplate);
+        service.importDeal(deal("ONE-1"));
+        clearInvocations(jdbcTemplate);
+
+        service.importDeal(deal("ONE-2"));
+
+        // the skip flag travels with the insert, the id comes from the block drawn before
+        verify(jdbcTemplate).update(anyString(), any(Object[].class));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void importDeal_FreshSequence_IdsStartAtItsFirstValue() {
+        FxDealService service = service(postgres(1L, 51L, 101L));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 52; i++) {
+            ids.add(service.importDeal(deal("FRESH-" + i)).getId());
+        }
+
+        assertEquals(LongStream.rangeClosed(1, 52).boxed().toList(), ids);
+    }
+
+    private JdbcTemplate postgres(Long firstValue, Long... sequenceValues) {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(true);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(firstValue, sequenceValues);
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+        return jdbcTemplate;
+    }
+
+    private FxDealService service(JdbcTemplate jdbcTemplate) {
+        return new FxDealService(mock(FxDealDao.class), mock(DealStatsService.class), mock(RecentDealStore.class),
+                mock(FileImportService.class), jdbcTemplate, mock(DealIdLocks.class));
+    }
+}
@@ -0,0 +1,70 @@
+package org.boolmberg.datawarehouse;
+
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.exception.ValidationException;
+import org.boolmberg.datawarehouse.validator.FxDealValidator;
+import org.boolmberg.datawarehouse.validator.ValidationError;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FxDealValidatorTest {
+
+    private final FxDealValidator validator = new FxDealValidator();
+    private final LocalDateTime maxDealTimestamp = validator.maxDealTimestamp();
+
+    @Test
+    void check_ValidDeal_ReturnsNull() {
+        assertNull(validator.check(deal("USD", "EUR"), maxDealTimestamp));
+        assertNull(validator.check(deal("AED", "ZAR"), maxDealTimestamp));
+        assertEquals(ValidationError.FROM_CURRENCY_UNKNOWN, validator.check(deal("AAA", "ZAR"), maxDealTimestamp));
+    }
+
+    @Test
+    void check_Currencies() {
+        assertEquals(ValidationError.FROM_CURRENCY_EMPTY, validator.check(deal(" ", "EUR"), maxDealTimestamp));
+        assertEquals(ValidationError.FROM_CURRENCY_FORMAT, validator.check(deal("usd", "EUR"), maxDealTimestamp));
+        assertEquals(ValidationError.FROM_CURRENCY_FORMAT, validator.check(deal("USDX", "EUR"), maxDealTimestamp));
+        assertEquals(ValidationError.TO_CURRENCY_UNKNOWN, validator.check(deal("USD", "ABC"), maxDealTimestamp));
+        assertEquals(ValidationError.SAME_CURRENCIES, validator.check(deal("USD", "USD"), maxDealTimestamp));
+    }
+
+    @Test
+    void check_DealFields() {
+        FxDealDTO deal = deal("USD", "EUR");
+        deal.setDealTimestamp(maxDealTimestamp.plusSeconds(1));
+        assertEquals(ValidationError.TIMESTAMP_IN_FUTURE, validator.check(deal, maxDealTimestamp));
+
+        deal = deal("USD", "EUR");
+        deal.setDealAmount(new BigDecimal("1.00001"));
+        assertEquals(ValidationError.AMOUNT_SCALE, validator.check(deal, maxDealTimestamp));
+
+        deal = deal("USD", "EUR");
+        deal.setDealAmount(BigDecimal.ZERO);
+        assertEquals(ValidationError.AMOUNT_NOT_POSITIVE, validator.check(deal, maxDealTimestamp));
+
+        deal = deal("USD", "EUR");
+        deal.setExchangeRate(null);
+        assertEquals(ValidationError.EXCHANGE_RATE_NULL, validator.check(deal, maxDealTimestamp));
+    }
+
+    @Test
+    void validate_InvalidDeal_ThrowsWithMessage() {
+        ValidationException e = assertThrows(ValidationException.class, () -> validator.validate(deal("USD", "XYZ")));
+        assertEquals("To currency 'XYZ' is not a valid ISO 4217 currency code", e.getMessage());
+    }
+
+    private FxDealDTO deal(String from, String to) {
+        return FxDealDTO.builder()
+                .dealId("DEAL-1")
+                .currencyFrom(from)
+                .currencyTo(to)
+                .dealAmount(new BigDecimal("100.25"))
+                .exchangeRate(1.1)
+                .dealTimestamp(LocalDateTime.now())
+                .build();
+    }
+}
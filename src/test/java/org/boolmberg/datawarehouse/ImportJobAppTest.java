@@ -0,0 +1,102 @@
+package org.boolmberg.datawarehouse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.boolmberg.datawarehouse.app.AdmissionControl;
+import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.app.ImportJobApp;
+import org.boolmberg.datawarehouse.config.AdmissionProperties;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.ImportJobDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.exception.ImportJobNotFoundException;
+import org.boolmberg.datawarehouse.exception.ImportRejectedException;
+import org.boolmberg.datawarehouse.model.ImportJobStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+class ImportJobAppTest {
+
+    private final FxDealApp fxDealApp = mock(FxDealApp.class);
+    private ThreadPoolExecutor executor;
+    private ImportJobApp importJobApp;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+        importJobApp = new ImportJobApp(fxDealApp, executor, new ImportProperties(),
+                new AdmissionControl(new AdmissionProperties(), new SimpleMeterRegistry(), null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void submitCsv_CompletesWithSummary() throws Exception {
+        ImportSummary summary = ImportSummary.builder().totalRecords(2).successfulImports(2).build();
+        when(fxDealApp.uploadCsv(any(Path.class), any(), any(), anyBoolean(), any())).thenReturn(summary);
+
+        ImportJobDTO submitted = importJobApp.submitCsv(csv(), false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        ImportJobDTO done = importJobApp.getJob(submitted.getJobId());
+        assertEquals(ImportJobStatus.COMPLETED, done.getStatus());
+        assertEquals(summary, done.getSummary());
+        assertNotNull(done.getFinishedAt());
+    }
+
+    @Test
+    void submitCsv_ImportThrows_JobFailed() throws Exception {
+        when(fxDealApp.uploadCsv(any(Path.class), any(), any(), anyBoolean(), any())).thenThrow(new RuntimeException("boom"));
+
+        ImportJobDTO submitted = importJobApp.submitCsv(csv(), false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        ImportJobDTO failed = importJobApp.getJob(submitted.getJobId());
+        assertEquals(ImportJobStatus.FAILED, failed.getStatus());
+        assertEquals("boom", failed.getError());
+    }
+
+    @Test
+    void submitCsv_NoFreeSlot_Rejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(fxDealApp.uploadCsv(any(Path.class), any(), any(), anyBoolean(), any())).thenAnswer(inv -> {
+            release.await();
+            return new ImportSummary();
+        });
+
+        importJobApp.submitCsv(csv(), false);
+
+        ImportRejectedException e = assertThrows(ImportRejectedException.class, () -> importJobApp.submitCsv(csv(), false));
+        assertEquals(Duration.ofSeconds(10), e.getRetryAfter());
+        release.countDown();
+    }
+
+    @Test
+    void getJob_Unknown_Throws() {
+        assertThrows(ImportJobNotFoundException.class, () -> importJobApp.getJob("nope"));
+    }
+
+    private MockMultipartFile csv() {
+        return new MockMultipartFile("file", "deals.csv", "text/csv",
+                "dealUniqueId\nDEAL-1\n".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,138 @@
+package org.boolmberg.datawarehouse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.boolmberg.datawarehouse.app.AdmissionControl;
+import org.boolmberg.datawarehouse.app.FxDealApp;
+import org.boolmberg.datawarehouse.config.AdmissionProperties;
+import org.boolmberg.datawarehouse.config.ImportMode;
+import org.boolmberg.datawarehouse.config.ImportProperties;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.ImportSummary;
+import org.boolmberg.datawarehouse.metrics.ImportMetrics;
+import org.boolmberg.datawarehouse.service.DealCache;
+import org.boolmberg.datawarehouse.service.ErrorService;
+import org.boolmberg.datawarehouse.service.FxDealCopyService;
+import org.boolmberg.datawarehouse.service.FxDealService;
+import org.boolmberg.datawarehouse.validator.FxDealValidator;
+import org.boolmberg.datawarehouse.validator.ValidationError;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ImportPipelineTest {
+
+    private final FxDealService fxDealService = mock(FxDealService.class);
+    private final FxDealCopyService fxDealCopyService = mock(FxDealCopyService.class);
+    private final ErrorService errorService = mock(ErrorService.class);
+    private final FxDealValidator validator = mock(FxDealValidator.class);
+    private final ImportProperties importProperties = new ImportProperties();
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+        importProperties.setMode(ImportMode.CHUNKED);
+        importProperties.setChunkSize(7);
+        importProperties.getPipeline().setMaxInFlightChunks(2);
+        // every 10th deal is invalid, the database already holds every 13th one
+        doAnswer(inv -> number(inv.getArgument(0)) % 10 == 0 ? ValidationError.AMOUNT_NOT_POSITIVE : null)
+                .when(validator).check(any(), any());
+        when(fxDealService.findExistingDealIds(anyCollection())).thenAnswer(inv -> inv.<Collection<String>>getArgument(0)
+                .stream()
+                .filter(id -> Integer.parseInt(id.substring(5)) % 13 == 0)
+                .collect(Collectors.toSet()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void importDeals_Pipelined_SameResultAsSequential() {
+        List<FxDealDTO> deals = deals(500);
+
+        ImportSummary sequential = newApp(null).importDeals(deals);
+        ImportSummary pipelined = newApp(pool).importDeals(deals);
+
+        assertEquals(500, pipelined.getTotalRecords());
+        assertEquals(sequential.getSuccessfulImports(), pipelined.getSuccessfulImports());
+        assertEquals(sequential.getFailedImports(), pipelined.getFailedImports());
+        assertEquals(sequential.getDuplicateImports(), pipelined.getDuplicateImports());
+        assertEquals(sequential.getErrors(), pipelined.getErrors());
+        assertTrue(pipelined.getDuplicateImports() > 0);
+    }
+
+    @Test
+    void importDeals_Pipelined_ErrorsReportedInFileOrder() {
+        ImportSummary result = newApp(pool).importDeals(deals(200));
+
+        List<Integer> rows = result.getErrors().stream().map(ImportSummary.ImportErrorDto::getRowNumber).toList();
+        List<Integer> sorted = new ArrayList<>(rows);
+        sorted.sort(null);
+        assertEquals(sorted, rows);
+    }
+
+    @Test
+    void importDeals_Pipelined_PersistFailureIsRethrown() {
+        doThrow(new IllegalStateException("error log down"))
+                .when(errorService).addImportError(anyString(), anyInt(), anyString(), anyString(), any());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> newApp(pool).importDeals(deals(100)));
+        assertEquals("error log down", e.getMessage());
+    }
+
+    @Test
+    void importDeals_PipelineDisabled_RunsInline() {
+        importProperties.getPipeline().setEnabled(false);
+        when(fxDealService.findExistingDealIds(anyCollection())).thenReturn(Set.of());
+        doReturn(null).when(validator).check(any(), any());
+
+        ImportSummary result = newApp(pool).importDeals(deals(20));
+
+        assertEquals(19, result.getSuccessfulImports());
+        assertEquals(1, result.getDuplicateImports());
+        verify(fxDealService, times(3)).importDeals(anyList());
+    }
+
+    private FxDealApp newApp(ForkJoinPool validationPool) {
+        return new FxDealApp(fxDealService, fxDealCopyService, errorService, validator, importProperties,
+                validationPool, mock(DealCache.class), new ImportMetrics(new SimpleMeterRegistry()), null,
+                new AdmissionControl(new AdmissionProperties(), new SimpleMeterRegistry(), null), null);
+    }
+
+    private List<FxDealDTO> deals(int count) {
+        List<FxDealDTO> deals = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            // every 17th deal repeats the one before it
+            int id = i % 17 == 0 ? i - 1 : i;
+            deals.add(FxDealDTO.builder()
+                    .dealId("DEAL-" + id)
+                    .currencyFrom("USD")
+                    .currencyTo("EUR")
+                    .dealAmount(new BigDecimal("100"))
+                    .exchangeRate(0.85)
+                    .dealTimestamp(LocalDateTime.now())
+                    .build());
+        }
+        return deals;
+    }
+
+    private static int number(FxDealDTO deal) {
+        return Integer.parseInt(deal.getDealId().substring(5));
+    }
+}
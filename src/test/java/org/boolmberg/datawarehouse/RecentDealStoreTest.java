@@ -0,0 +1,119 @@
+package org.boolmberg.datawarehouse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.boolmberg.datawarehouse.config.RecentDealStoreProperties;
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+import org.boolmberg.datawarehouse.dto.RecentScanDTO;
+import org.boolmberg.datawarehouse.service.RecentDealStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentDealStoreTest {
+
+    private final RecentDealStoreProperties properties = new RecentDealStoreProperties();
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    private RecentDealStore store;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setRetention(Duration.ofDays(3));
+        properties.setSegmentSize(4);
+        store = new RecentDealStore(null, properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void scan_AggregatesPerPairAcrossSegments() {
+        store.record(List.of(
+                deal("EUR", "USD", now.minusHours(1), "100", 1.1),
+                deal("EUR", "USD", now.minusHours(2), "300.5", 1.2),
+                deal("GBP", "JPY", now.minusHours(3), "50", 180.0),
+                deal("EUR", "USD", now.minusHours(4), "0.0001", 1.3),
+                deal("GBP", "JPY", now.minusHours(5), "25.25", 190.0)));
+
+        RecentScanDTO all = store.scan(null, null, null, null, null);
+        assertEquals(5, all.getDeals());
+        assertEquals(0, new BigDecimal("475.7501").compareTo(all.getNotional()));
+        assertEquals(0, new BigDecimal("0.0001").compareTo(all.getMinAmount()));
+        assertEquals(2, all.getSegmentsScanned());
+        assertEquals(List.of("EURUSD", "GBPJPY"), all.getPairs().stream().map(RecentScanDTO.PairTotals::getPair).toList());
+
+        RecentScanDTO eurUsd = store.scan("EURUSD", new BigDecimal("50"), null, null, null);
+        assertEquals(2, eurUsd.getDeals());
+        assertEquals(0, new BigDecimal("400.5").compareTo(eurUsd.getNotional()));
+        assertEquals(0, new BigDecimal("300.5").compareTo(eurUsd.getMaxAmount()));
+        assertEquals((100 * 1.1 + 300.5 * 1.2) / 400.5, eurUsd.getAverageRate(), 1e-9);
+
+        assertEquals(0, store.scan("USDCHF", null, null, null, null).getDeals());
+    }
+
+    @Test
+    void scan_SkipsSegmentsOutsideTimeRange() {
+        List<FxDealDTO> deals = new ArrayList<>();
+        for (int i = 12; i > 0; i--) {
+            deals.add(deal("EUR", "USD", now.minusHours(i), "10", 1.0));
+        }
+        store.record(deals);
+
+        RecentScanDTO lastHours = store.scan(null, null, null, now.minusHours(4), null);
+
+        assertEquals(4, lastHours.getDeals());
+        assertEquals(1, lastHours.getSegmentsScanned());
+        assertEquals(2, lastHours.getSegmentsSkipped());
+    }
+
+    @Test
+    void record_DropsDealsPastRetention() {
+        store.record(List.of(
+                deal("EUR", "USD", now.minusDays(4), "10", 1.0),
+                deal("EUR", "USD", now.minusDays(1), "20", 1.0)));
+
+        RecentScanDTO result = store.scan(null, null, null, now.minusDays(10), null);
+
+        assertEquals(1, result.getDeals());
+        assertEquals(1, store.size());
+        assertFalse(result.getCoveredFrom().isBefore(now.minusDays(3)));
+    }
+
+    @Test
+    void record_OverMemoryBudget_EvictsOldestSegments() {
+        properties.setMemoryBudget(DataSize.ofBytes(2L * 4 * 26));
+        List<FxDealDTO> deals = new ArrayList<>();
+        for (int i = 12; i > 0; i--) {
+            deals.add(deal("EUR", "USD", now.minusHours(i), "10", 1.0));
+        }
+        store.record(deals);
+
+        RecentScanDTO result = store.scan(null, null, null, null, null);
+
+        assertEquals(8, store.size());
+        assertEquals(8, result.getDeals());
+        assertEquals(now.minusHours(9).plus(1, ChronoUnit.MILLIS), result.getCoveredFrom());
+    }
+
+    @Test
+    void scan_SumBeyondLongRange_StaysExact() {
+        String amount = "900000000000000";
+        store.record(List.of(
+                deal("EUR", "USD", now.minusHours(1), amount, 1.0),
+                deal("EUR", "USD", now.minusHours(2), amount, 1.0),
+                deal("EUR", "USD", now.minusHours(3), amount, 1.0)));
+
+        assertEquals(0, new BigDecimal(amount).multiply(BigDecimal.valueOf(3))
+                .compareTo(store.scan(null, null, null, null, null).getNotional()));
+    }
+
+    private static FxDealDTO deal(String from, String to, LocalDateTime timestamp, String amount, double rate) {
+        return TestDeals.deal("RECENT-" + timestamp, from, to, timestamp, amount, rate);
+    }
+}
@@ -0,0 +1,28 @@
+package org.boolmberg.datawarehouse;
+
+import org.boolmberg.datawarehouse.dto.FxDealDTO;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// valid deals shared by the tests, each test picks ids and pairs no other test writes
+final class TestDeals {
+
+    private TestDeals() {
+    }
+
+    static FxDealDTO deal(String dealId) {
+        return deal(dealId, "USD", "EUR", LocalDateTime.of(2024, 1, 15, 10, 30), "100.25", 0.85);
+    }
+
+    static FxDealDTO deal(String dealId, String from, String to, LocalDateTime timestamp, String amount, double rate) {
+        return FxDealDTO.builder()
+                .dealId(dealId)
+                .currencyFrom(from)
+                .currencyTo(to)
+                .dealTimestamp(timestamp)
+                .dealAmount(new BigDecimal(amount))
+                .exchangeRate(rate)
+                .build();
+    }
+}